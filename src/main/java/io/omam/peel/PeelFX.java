@@ -30,14 +30,21 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import io.omam.peel.library.LibraryController;
 import io.omam.peel.player.PlayerController;
 import io.omam.peel.server.MediaHttpServer;
 import io.omam.peel.server.MediaServer;
+import io.omam.peel.tracks.LibraryRoot;
+import io.omam.peel.tracks.ScanSettings;
 import javafx.application.Application;
 import javafx.scene.Node;
 import javafx.scene.Scene;
@@ -87,12 +94,13 @@ public final class PeelFX extends Application {
         scene.getStylesheets().add("/css/peel.css");
         primaryStage.setScene(scene);
 
-        final Path libraryRootPath = libraryRootPath();
+        final List<LibraryRoot> libraryRoots = libraryRoots();
         final int mediaServerPort = mediaServerPort();
-        server = MediaHttpServer.start(libraryRootPath, mediaServerPort);
+        server = MediaHttpServer
+            .start(libraryRoots.stream().map(LibraryRoot::path).collect(Collectors.toList()), mediaServerPort);
 
         player = new PlayerController(server);
-        library = new LibraryController(libraryRootPath, SUPPORTED_FORMATS, player);
+        library = new LibraryController(libraryRoots, SUPPORTED_FORMATS, player);
 
         final Node lw = library.widget();
         GridPane.setVgrow(lw, Priority.ALWAYS);
@@ -122,16 +130,45 @@ public final class PeelFX extends Application {
         }
     }
 
-    private Path libraryRootPath() {
+    /* value of --name.index if given, of --name otherwise: per root setting overriding the global one. */
+    private boolean booleanParameter(final String name, final int index, final boolean defaultValue) {
+        final String value = parameter(name, index);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private int intParameter(final String name, final int index, final int defaultValue) {
+        final String value = parameter(name, index);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(name + " [" + value + "] is not a valid integer", e);
+        }
+    }
+
+    /* roots separated by the platform path separator, numbered from 1 in the given order. */
+    private List<LibraryRoot> libraryRoots() {
         final String value = getParameters().getNamed().get("libraryRootPath");
         if (value == null) {
             throw new IllegalArgumentException("missing --libraryRootPath argument");
         }
-        final Path p = Paths.get(value);
-        if (!p.toFile().exists()) {
-            throw new IllegalArgumentException("libraryRootPath [" + p + "] does not exist");
+        final List<LibraryRoot> roots = new ArrayList<>();
+        for (final String path : value.split(Pattern.quote(File.pathSeparator))) {
+            if (path.isBlank()) {
+                continue;
+            }
+            final Path p = Paths.get(path);
+            if (!p.toFile().exists()) {
+                throw new IllegalArgumentException("libraryRootPath [" + p + "] does not exist");
+            }
+            roots.add(new LibraryRoot(p, scanSettings(roots.size() + 1), scanCheckpoints()));
         }
-        return p;
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("libraryRootPath [" + value + "] is empty");
+        }
+        return roots;
     }
 
     private int mediaServerPort() {
@@ -146,4 +183,32 @@ public final class PeelFX extends Application {
         }
     }
 
+    private String parameter(final String name, final int index) {
+        final String value = getParameters().getNamed().get(name + "." + index);
+        return value == null ? getParameters().getNamed().get(name) : value;
+    }
+
+    /* directory where the progress of full scans is saved, under the user home unless given; none if blank. */
+    private Path scanCheckpoints() {
+        final String value = getParameters().getNamed().get("scanCheckpointPath");
+        if (value == null) {
+            return Paths.get(System.getProperty("user.home"), ".peel", "scans");
+        }
+        return value.isBlank() ? null : Paths.get(value);
+    }
+
+    private ScanSettings scanSettings(final int index) {
+        final ScanSettings defaults = ScanSettings.defaults();
+        final int maxDepth = intParameter("scanMaxDepth", index, defaults.maxDepth());
+        final int parallelism = intParameter("scanParallelism", index, defaults.parallelism());
+        final boolean followLinks = booleanParameter("scanFollowLinks", index, defaults.followLinks());
+        final boolean remote = booleanParameter("scanRemote", index, defaults.isRemote());
+        final int maxOutstandingRequests =
+                intParameter("scanMaxOutstandingRequests", index, defaults.maxOutstandingRequests());
+        final int injectedLatency =
+                intParameter("scanInjectedLatency", index, (int) defaults.injectedLatency());
+        return new ScanSettings(maxDepth, parallelism, followLinks, remote, maxOutstandingRequests,
+                                injectedLatency);
+    }
+
 }
@@ -44,18 +44,25 @@ public final class PeelThreadFactory implements ThreadFactory {
 
     private final String namePrefix;
 
+    private final int priority;
+
     public PeelThreadFactory(final String suffix) {
+        this(suffix, Thread.NORM_PRIORITY);
+    }
+
+    public PeelThreadFactory(final String suffix, final int aPriority) {
         final SecurityManager s = System.getSecurityManager();
         threadNumber = new AtomicInteger(1);
         group = s != null ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
         namePrefix = "peel-" + suffix + "-" + POOL_NUMBER.getAndIncrement() + "-thread-";
+        priority = aPriority;
     }
 
     @Override
     public final Thread newThread(final Runnable r) {
         final Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
         t.setDaemon(true);
-        t.setPriority(Thread.NORM_PRIORITY);
+        t.setPriority(priority);
         return t;
     }
 }
@@ -32,12 +32,16 @@ package io.omam.peel.library;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import io.omam.peel.jfx.Jfx;
 import io.omam.peel.player.Playback;
 import io.omam.peel.tracks.Album;
 import io.omam.peel.tracks.Track;
+import javafx.application.Platform;
 import javafx.css.PseudoClass;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -49,12 +53,26 @@ final class AlbumView extends VBox {
 
     private static final PseudoClass EXPANDED = PseudoClass.getPseudoClass("expanded");
 
+    private final Album album;
+
     private final Playback player;
 
     private final VBox tracks;
 
-    AlbumView(final Album album, final Playback aPlayer) {
+    private final Executor lister;
+
+    private final Consumer<String> errorHandler;
+
+    /*
+     * lister: lists the album directory if not yet resolved; errorHandler: told, from any thread, when it could
+     * not be.
+     */
+    AlbumView(final Album anAlbum, final Playback aPlayer, final Executor aLister,
+            final Consumer<String> anErrorHandler) {
+        album = anAlbum;
         player = aPlayer;
+        lister = aLister;
+        errorHandler = anErrorHandler;
 
         getStyleClass().add("peel-library-album");
 
@@ -80,17 +98,17 @@ final class AlbumView extends VBox {
 
         final Button playNow = Jfx.button(Icons.PLAY_NOW_ICON, "peel-library-play-now");
         playNow.setText("now");
-        playNow.setOnAction(e -> player.playTracks(trackData()));
+        playNow.setOnAction(e -> withTracks(player::playTracks));
         controls.getChildren().add(playNow);
 
         final Button playNext = Jfx.button(Icons.PLAY_NEXT_ICON, "peel-library-play-next");
         playNext.setText("next");
-        playNext.setOnAction(e -> player.queueTracksNext(trackData()));
+        playNext.setOnAction(e -> withTracks(player::queueTracksNext));
         controls.getChildren().add(playNext);
 
         final Button playLast = Jfx.button(Icons.PLAY_LAST_ICON, "peel-library-play-last");
         playLast.setText("last");
-        playLast.setOnAction(e -> player.queueTracksLast(trackData()));
+        playLast.setOnAction(e -> withTracks(player::queueTracksLast));
         controls.getChildren().add(playLast);
 
         getChildren().add(controls);
@@ -98,12 +116,17 @@ final class AlbumView extends VBox {
         tracks = new VBox();
         tracks.getStyleClass().add("peel-library-album-tracks");
 
-        album.tracks().stream().map(this::toTrack).forEach(tracks.getChildren()::add);
-
         toggle.selectedProperty().addListener((obs, ov, nv) -> {
             if (nv) {
                 pseudoClassStateChanged(EXPANDED, true);
                 toggle.setGraphic(Jfx.icon(Icons.CLEAR_ICON));
+                if (tracks.getChildren().isEmpty()) {
+                    withTracks(ts -> {
+                        if (tracks.getChildren().isEmpty()) {
+                            ts.stream().map(this::toTrack).forEach(tracks.getChildren()::add);
+                        }
+                    });
+                }
                 getChildren().addAll(tracks);
             } else {
                 pseudoClassStateChanged(EXPANDED, false);
@@ -140,8 +163,21 @@ final class AlbumView extends VBox {
 
     }
 
-    private List<Track> trackData() {
-        return tracks.getChildren().stream().map(c -> (Track) c.getUserData()).collect(Collectors.toList());
+    /* calls the given consumer on the FX thread with the tracks of the album. */
+    private void withTracks(final Consumer<List<Track>> consumer) {
+        if (album.isResolved()) {
+            consumer.accept(album.tracks());
+            return;
+        }
+        /* listing the album directory may be slow: never do it on the FX thread. */
+        CompletableFuture.supplyAsync(album::tracks, lister).whenComplete((ts, failure) -> {
+            if (failure == null) {
+                Platform.runLater(() -> consumer.accept(ts));
+            } else {
+                final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                errorHandler.accept("Could not list " + album.name() + ": " + cause.getMessage());
+            }
+        });
     }
 
 }
@@ -38,7 +38,10 @@ import javafx.scene.layout.HBox;
 
 final class ArtistView extends HBox {
 
-    ArtistView(final Artist artist, final TextField searchField) {
+    private final String name;
+
+    ArtistView(final Artist artist, final TextField searchField, final SearchHandler searchHandler) {
+        name = artist.name();
         getStyleClass().add("peel-library-artist");
 
         final Label label = new Label(artist.name());
@@ -47,7 +50,14 @@ final class ArtistView extends HBox {
         getChildren().add(label);
 
         // FIXME: exact match
-        addEventHandler(MouseEvent.MOUSE_RELEASED, e -> searchField.setText(artist.name()));
+        addEventHandler(MouseEvent.MOUSE_RELEASED, e -> {
+            searchHandler.requested(artist.name());
+            searchField.setText(artist.name());
+        });
+    }
+
+    final String name() {
+        return name;
     }
 
 }
@@ -30,55 +30,84 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.library;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.omam.peel.tracks.Artist;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
 
 final class ArtistsView extends VBox {
 
-    private VBox pending;
-
     private final Map<String, VBox> artists;
 
-    ArtistsView() {
+    private final SearchHandler searchHandler;
+
+    ArtistsView(final SearchHandler aSearchHandler) {
         getStyleClass().add("peel-library-artists");
         artists = new HashMap<>();
-        pending = null;
+        searchHandler = aSearchHandler;
     }
 
     final void clear() {
         getChildren().clear();
         artists.clear();
-        pending = null;
     }
 
-    final void done() {
-        if (pending != null) {
-            getChildren().add(pending);
+    /* names of the artists intersecting the given bounds, in scene coordinates. */
+    final List<String> visible(final Bounds viewport) {
+        final List<String> names = new ArrayList<>();
+        for (final Node index : getChildren()) {
+            if (!index.localToScene(index.getBoundsInLocal()).intersects(viewport)) {
+                continue;
+            }
+            for (final Node child : ((VBox) index).getChildren()) {
+                if (child instanceof ArtistView
+                    && child.localToScene(child.getBoundsInLocal()).intersects(viewport)) {
+                    names.add(((ArtistView) child).name());
+                }
+            }
         }
-        pending = null;
+        return names;
     }
 
-    final void withArtist(final Artist artist, final TextField searchField) {
-        final VBox vbox;
-        if (!artists.containsKey(artist.firstChar())) {
+    /*
+     * inserts the given artist at the given position among all the artists shown, index letters excluded: artists
+     * are sorted by index letter first, so the letters before the one of the artist hold the first artists.
+     */
+    final void withArtist(final int position, final Artist artist, final TextField searchField) {
+        final String letter = artist.firstChar();
+        VBox vbox = artists.get(letter);
+        if (vbox == null) {
             vbox = new VBox();
-            final Label label = new Label(artist.firstChar());
+            vbox.setUserData(letter);
+            final Label label = new Label(letter);
             label.getStyleClass().add("peel-library-artist-index");
             label.setMaxWidth(Double.MAX_VALUE);
             vbox.getChildren().add(label);
-            artists.put(artist.firstChar(), vbox);
-            if (pending != null) {
-                getChildren().add(pending);
+            artists.put(letter, vbox);
+            int at = 0;
+            while (at < getChildren().size()
+                && ((String) getChildren().get(at).getUserData()).compareTo(letter) < 0) {
+                at++;
             }
-            pending = vbox;
-        } else {
-            vbox = artists.get(artist.firstChar());
+            getChildren().add(at, vbox);
         }
-        vbox.getChildren().add(new ArtistView(artist, searchField));
+        int offset = position;
+        for (final Node index : getChildren()) {
+            if (index == vbox) {
+                break;
+            }
+            /* the index letter itself is not an artist. */
+            offset -= ((VBox) index).getChildren().size() - 1;
+        }
+        final int at = Math.max(1, Math.min(offset + 1, vbox.getChildren().size()));
+        vbox.getChildren().add(at, new ArtistView(artist, searchField, searchHandler));
     }
-}
\ No newline at end of file
+
+}
@@ -30,19 +30,36 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.library;
 
-import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import io.omam.peel.core.PeelThreadFactory;
 import io.omam.peel.player.Playback;
 import io.omam.peel.tracks.Album;
 import io.omam.peel.tracks.Artist;
+import io.omam.peel.tracks.Catalog;
+import io.omam.peel.tracks.Facet;
+import io.omam.peel.tracks.FacetFilter;
+import io.omam.peel.tracks.LibraryRoot;
+import io.omam.peel.tracks.Query;
+import io.omam.peel.tracks.ScanStatistics;
+import io.omam.peel.tracks.SearchCursor;
 import io.omam.peel.tracks.SearchListener;
+import io.omam.peel.tracks.SortedResults;
+import io.omam.peel.tracks.TrackIndex;
 import io.omam.peel.tracks.Tracks;
 import javafx.scene.Node;
 
@@ -78,61 +95,305 @@ public final class LibraryController implements SearchHandler {
         }
     }
 
-    private final Path libraryRoot;
+    private static final class Pages {
+
+        final SearchCursor<Album> cursor;
+
+        /* the index searched, null if the library directories are walked instead. */
+        final CompletableFuture<TrackIndex> index;
+
+        /* albums shown so far, in the order of the view. */
+        final SortedResults<Album> sorted;
+
+        int shown;
+
+        volatile boolean over;
+
+        Pages(final SearchCursor<Album> aCursor, final CompletableFuture<TrackIndex> anIndex) {
+            cursor = aCursor;
+            index = anIndex;
+            sorted = SortedResults.albums();
+            shown = 0;
+            over = false;
+        }
+
+    }
+
+    private static final int MAX_SUGGESTIONS = 8;
+
+    /* albums fetched per page, about two screens. */
+    private static final int PAGE_SIZE = 16;
+
+    private static final int READ_AHEAD = PAGE_SIZE;
+
+    /* longest wait for a page before showing what has been found so far, in milliseconds. */
+    private static final long SEARCH_DEADLINE = 300;
+
+    /* period of progress updates while a partial page is refined, in milliseconds. */
+    private static final long REFINE_PERIOD = 250;
+
+    private final List<LibraryRoot> roots;
 
     private final Set<String> supportedFormats;
 
     private final ExecutorService executor;
 
+    /* runs the searches, and lists the albums whose tracks the user asked for. */
+    private final ExecutorService searcher;
+
+    /* one thread per root: a slow root does not hold back the others. */
+    private final ExecutorService indexer;
+
+    /* completed once every root has been indexed or failed to be, exceptionally if all failed. */
+    private final CompletableFuture<Void> indexed;
+
+    /* versions of the library indexed so far, read by searches without locking. */
+    private final Catalog catalog;
+
+    private final ThreadPoolExecutor warmer;
+
     private final LibraryView view;
 
     private Future<?> pendingSearch;
 
-    public LibraryController(final Path aLibraryRoot, final Set<String> someSupportedFormats,
+    private Pages pages;
+
+    private FacetFilter filter;
+
+    public LibraryController(final List<LibraryRoot> someRoots, final Set<String> someSupportedFormats,
             final Playback player) {
-        libraryRoot = aLibraryRoot;
+        roots = someRoots;
         supportedFormats = someSupportedFormats;
         executor = Executors.newSingleThreadExecutor(new PeelThreadFactory("library"));
-        view = new LibraryView(this, player);
+        /* producers of the album searches, idle while the user is not scrolling. */
+        searcher = Executors.newCachedThreadPool(new PeelThreadFactory("library-search"));
+        indexer = Executors.newFixedThreadPool(roots.size(), new PeelThreadFactory("library-index"));
+        indexed = new CompletableFuture<>();
+        catalog = new Catalog();
+        warmer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                        new PeelThreadFactory("library-warmer", Thread.MIN_PRIORITY));
+        view = new LibraryView(this, player, searcher);
+        /* track and combined searches need to look inside every album: index once in the background. */
+        final AtomicInteger remaining = new AtomicInteger(roots.size());
+        final AtomicInteger failed = new AtomicInteger();
+        for (final LibraryRoot root : roots) {
+            final CompletableFuture<TrackIndex> index =
+                    CompletableFuture.supplyAsync(() -> Tracks.index(root, supportedFormats), indexer);
+            /*
+             * then compute stable track identities, still in the background: chained after the catalog update,
+             * never before, since dependents of a single future do not run in the order they were added.
+             */
+            index.thenApplyAsync(idx -> {
+                catalog.put(root, idx);
+                return idx;
+            }, indexer).whenComplete((idx, failure) -> {
+                if (failure != null) {
+                    failed.incrementAndGet();
+                    final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    view.setError("Could not index " + root.path() + ": " + cause.getMessage());
+                }
+                if (remaining.decrementAndGet() > 0) {
+                    return;
+                }
+                if (failed.get() == roots.size()) {
+                    indexed.completeExceptionally(failure);
+                } else {
+                    indexed.complete(null);
+                }
+            }).thenAcceptAsync(idx -> Tracks.identify(idx, root), indexer);
+        }
         pendingSearch = null;
+        pages = null;
+        filter = FacetFilter.none();
         searchArtists();
     }
 
+    @Override
+    public final Map<String, Integer> facetCounts(final Facet facet, final FacetFilter aFilter) {
+        /* bitmap cardinalities: cheap enough to be computed every time a facet menu is shown. */
+        final Catalog.Snapshot snapshot = catalog.current();
+        return snapshot.isEmpty() ? Map.of() : snapshot.index().facets().counts(facet, aFilter);
+    }
+
+    @Override
+    public final void filter(final FacetFilter aFilter) {
+        filter = aFilter;
+    }
+
+    @Override
+    public final void more() {
+        if (pages != null && !pages.over && (pendingSearch == null || pendingSearch.isDone())) {
+            fetchPage(pages);
+        }
+    }
+
+    @Override
+    public final void requested(final String artistName) {
+        roots.forEach(r -> r.priority().request(artistName));
+    }
+
+    @Override
+    public final ScanStatistics.Snapshot scanStatistics() {
+        return roots
+            .stream()
+            .map(r -> r.statistics().snapshot())
+            .reduce(ScanStatistics.none(), ScanStatistics.Snapshot::plus);
+    }
+
     @Override
     public final void search(final SearchType searchType, final String text) {
         cancelPendingSearch();
-        final String lc = text.toLowerCase();
-        final SearchListener<Album> l = new SearchListenerImpl<>(view, false, view::addAlbum);
-        final Runnable task;
-        if (searchType == SearchType.ARTIST) {
-            task = Tracks.searchByArtist(libraryRoot, supportedFormats, a -> a.toLowerCase().contains(lc), l);
+        final String query = Tracks.fold(text);
+        final Predicate<String> predicate = k -> k.contains(query);
+        final Query structured = Query.parse(text);
+        final CompletableFuture<TrackIndex> index = index();
+        final Flow.Publisher<Album> publisher;
+        final CompletableFuture<TrackIndex> searched;
+        if (!structured.isFreeText()) {
+            /* the search type is irrelevant: fields are given by the query. */
+            publisher = Tracks.publishQuery(index, structured, filter, searcher);
+            searched = index;
+        } else if (filter.isEmpty()) {
+            switch (searchType) {
+                case ARTIST:
+                    publisher = Tracks.publishByArtist(roots, supportedFormats, predicate, searcher);
+                    searched = null;
+                    break;
+                case ALBUM:
+                    publisher = Tracks.publishByAlbum(roots, supportedFormats, predicate, searcher);
+                    searched = null;
+                    break;
+                case TRACK:
+                    publisher = Tracks.publishByTrack(index, predicate, searcher);
+                    searched = index;
+                    break;
+                default:
+                    publisher = Tracks.publishAll(index, predicate, searcher);
+                    searched = index;
+                    break;
+            }
         } else {
-            task = Tracks.searchByAlbum(libraryRoot, supportedFormats, a -> a.toLowerCase().contains(lc), l);
+            /* facets need tags: search the filtered index only. */
+            final FacetFilter f = filter;
+            final CompletableFuture<TrackIndex> filtered = index.thenApply(idx -> Tracks.filter(idx, f));
+            searched = filtered;
+            switch (searchType) {
+                case ARTIST:
+                    publisher = Tracks.publishByArtist(filtered, predicate, searcher);
+                    break;
+                case ALBUM:
+                    publisher = Tracks.publishByAlbum(filtered, predicate, searcher);
+                    break;
+                case TRACK:
+                    publisher = Tracks.publishByTrack(filtered, predicate, searcher);
+                    break;
+                default:
+                    publisher = Tracks.publishAll(filtered, predicate, searcher);
+                    break;
+            }
         }
-        pendingSearch = executor.submit(task);
+        /* only the albums the user scrolls to are searched for. */
+        pages = new Pages(SearchCursor.open(publisher, READ_AHEAD), searched);
+        view.searchStarted(false);
+        fetchPage(pages);
     }
 
     @Override
     public final void searchArtists() {
         cancelPendingSearch();
-        final SearchListener<List<Artist>> l = new SearchListenerImpl<>(view, true, view::addArtists);
-        final Runnable task = Tracks.searchArtists(libraryRoot, l);
+        /* every artist at its final position as soon as it is listed: no sorting once all are known. */
+        final SortedResults<Artist> sorted = SortedResults.artists();
+        final SearchListener<Artist> l =
+                new SearchListenerImpl<>(view, true, a -> view.addArtist(sorted.add(a), a));
+        final Runnable task = Tracks.searchArtists(roots, l);
         pendingSearch = executor.submit(task);
     }
 
+    @Override
+    public final List<String> suggest(final String text) {
+        /* in memory only: cheap enough to be called on every key stroke. */
+        return catalog.current().suggestions().complete(text, MAX_SUGGESTIONS);
+    }
+
+    @Override
+    public final void visible(final List<String> artistNames) {
+        roots.forEach(r -> r.priority().show(artistNames));
+    }
+
     public final void shutdown() {
         executor.shutdownNow();
+        searcher.shutdownNow();
+        indexer.shutdownNow();
+        warmer.shutdownNow();
     }
 
     public final Node widget() {
         return view.pane;
     }
 
+    private void addAlbum(final Pages p, final Album album) {
+        view.addAlbum(p.sorted.add(album), album);
+        if (!album.isResolved()) {
+            warmer.execute(album::tracks);
+        }
+    }
+
     private void cancelPendingSearch() {
         if (pendingSearch != null) {
             pendingSearch.cancel(true);
             pendingSearch = null;
         }
+        if (pages != null) {
+            pages.cursor.close();
+            pages = null;
+        }
+        /* albums of the previous search no longer need warming up. */
+        warmer.getQueue().clear();
+    }
+
+    /*
+     * whatever has been found within the deadline is shown straight away, the rest of the page is then added as it
+     * is found, until the page is full, the search is over or superseded by another one.
+     */
+    private void fetchPage(final Pages p) {
+        pendingSearch = executor.submit(() -> {
+            try {
+                int missing = PAGE_SIZE;
+                long timeout = SEARCH_DEADLINE;
+                while (missing > 0 && !Thread.currentThread().isInterrupted()) {
+                    final List<Album> found = p.cursor.window(p.shown, missing, timeout, TimeUnit.MILLISECONDS);
+                    p.shown += found.size();
+                    missing -= found.size();
+                    found.forEach(a -> addAlbum(p, a));
+                    final boolean complete = p.cursor.isComplete();
+                    final int estimated = p.cursor.estimatedCount();
+                    p.over = complete && p.shown >= estimated;
+                    final boolean partial = missing > 0 && !complete;
+                    view.searchProgress(p.shown, estimated, p.cursor.progress(), partial, p.over);
+                    if (p.over) {
+                        view.searchOver();
+                        if (p.index != null && p.index.isCompletedExceptionally()) {
+                            /* after the progress, so that it is not overwritten. */
+                            view.setError("The library could not be indexed: nothing to search");
+                        }
+                    }
+                    if (!partial) {
+                        break;
+                    }
+                    timeout = REFINE_PERIOD;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /*
+     * the catalog once every root has been indexed, or could not be: searching before would silently miss the
+     * albums of the roots still being indexed; the search shows its progress meanwhile.
+     */
+    private CompletableFuture<TrackIndex> index() {
+        return indexed.thenApply(v -> catalog.current().index());
     }
 
 }
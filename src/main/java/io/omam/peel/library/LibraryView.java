@@ -31,17 +31,30 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package io.omam.peel.library;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import io.omam.peel.jfx.Fader;
 import io.omam.peel.jfx.Jfx;
 import io.omam.peel.player.Playback;
 import io.omam.peel.tracks.Album;
 import io.omam.peel.tracks.Artist;
+import io.omam.peel.tracks.Facet;
+import io.omam.peel.tracks.FacetFilter;
+import io.omam.peel.tracks.ScanStatistics;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
 import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuButton;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ScrollPane.ScrollBarPolicy;
@@ -55,6 +68,9 @@ final class LibraryView {
 
     private final Playback player;
 
+    /* lists albums not yet resolved, off the FX thread. */
+    private final Executor lister;
+
     final BorderPane pane;
 
     private final HBox search;
@@ -63,18 +79,33 @@ final class LibraryView {
 
     private final TextField searchField;
 
+    private final ContextMenu suggestions;
+
     private final Button searchClear;
 
+    private final HBox facets;
+
+    private FacetFilter filter;
+
     private final VBox albums;
 
     private final ArtistsView artists;
 
     private final ScrollPane scrollPane;
 
+    private final Label status;
+
+    private final Label scan;
+
+    private final Timeline scanPolling;
+
     private final Fader searching;
 
-    LibraryView(final SearchHandler searchHandler, final Playback aPlayer) {
+    private final PauseTransition viewed;
+
+    LibraryView(final SearchHandler searchHandler, final Playback aPlayer, final Executor aLister) {
         player = aPlayer;
+        lister = aLister;
 
         pane = new BorderPane();
         pane.setMaxHeight(Double.MAX_VALUE);
@@ -100,8 +131,12 @@ final class LibraryView {
 
         searchField = new TextField();
         searchField.getStyleClass().add("peel-library-search-bar-field");
+        searchField.setPromptText("artist:radiohead year>=2000 format:flac \"kid a\"");
         search.getChildren().add(searchField);
 
+        suggestions = new ContextMenu();
+        suggestions.getStyleClass().add("peel-library-search-suggestions");
+
         Jfx.addSpacing(search);
 
         searchClear = new Button();
@@ -110,12 +145,23 @@ final class LibraryView {
 
         searchClear.setOnAction(e -> searchField.clear());
 
-        pane.setTop(search);
+        facets = new HBox();
+        facets.getStyleClass().add("peel-library-facets");
+        filter = FacetFilter.none();
+        for (final Facet facet : Facet.values()) {
+            final MenuButton mb = new MenuButton(facet.display());
+            mb.getStyleClass().add("peel-library-facet");
+            /* counts depend on the other facets: refreshed every time the menu is shown. */
+            mb.setOnShowing(e -> facetValues(mb, facet, searchHandler));
+            facets.getChildren().add(mb);
+        }
+
+        pane.setTop(new VBox(search, facets));
 
         albums = new VBox();
         albums.getStyleClass().add("peel-library-albums");
 
-        artists = new ArtistsView();
+        artists = new ArtistsView(searchHandler);
 
         scrollPane = new ScrollPane();
         scrollPane.setFitToWidth(true);
@@ -124,6 +170,29 @@ final class LibraryView {
         scrollPane.getStyleClass().add("peel-library-scroll");
         pane.setCenter(scrollPane);
 
+        status = new Label();
+        status.getStyleClass().add("peel-library-status");
+        status.setMaxWidth(Double.MAX_VALUE);
+
+        scan = new Label();
+        scan.getStyleClass().add("peel-library-scan");
+        scan.setMaxWidth(Double.MAX_VALUE);
+        pane.setBottom(new VBox(status, scan));
+
+        /* scan counters, every second until the library is scanned. */
+        scanPolling = new Timeline(new KeyFrame(Duration.seconds(1), e -> scanProgress(searchHandler)));
+        scanPolling.setCycleCount(Animation.INDEFINITE);
+        scanPolling.play();
+
+        /* fetch more albums when scrolling close to the end, or while the view is not full. */
+        scrollPane.vvalueProperty().addListener((obs, ov, nv) -> moreIfNeeded(searchHandler));
+        albums.getChildren().addListener((ListChangeListener<Node>) c -> moreIfNeeded(searchHandler));
+
+        /* artists on screen are scanned first, once scrolling settles. */
+        viewed = new PauseTransition(Duration.millis(200));
+        viewed.setOnFinished(e -> visibleArtists(searchHandler));
+        scrollPane.vvalueProperty().addListener((obs, ov, nv) -> viewed.playFromStart());
+
         final PauseTransition pause = new PauseTransition(Duration.millis(250));
         searchType.textProperty().addListener((obs, ov, nv) -> {
             pause.stop();
@@ -131,6 +200,7 @@ final class LibraryView {
         });
 
         searchField.textProperty().addListener((obs, ov, nv) -> {
+            suggest(searchHandler.suggest(nv), nv);
             pause.setOnFinished(e -> search(searchHandler));
             pause.playFromStart();
         });
@@ -139,18 +209,19 @@ final class LibraryView {
 
     }
 
-    final void addAlbum(final Album album) {
+    /* inserts the given album at the given position, as given by SortedResults. */
+    final void addAlbum(final int position, final Album album) {
         Platform.runLater(() -> {
-            albums.getChildren().add(new AlbumView(album, player));
+            final AlbumView view = new AlbumView(album, player, lister, this::setError);
+            albums.getChildren().add(Math.min(position, albums.getChildren().size()), view);
         });
     }
 
-    final void addArtists(final List<Artist> artistList) {
+    /* inserts the given artist at the given position, as given by SortedResults. */
+    final void addArtist(final int position, final Artist artist) {
         Platform.runLater(() -> {
-            for (final Artist artist : artistList) {
-                artists.withArtist(artist, searchField);
-            }
-            artists.done();
+            artists.withArtist(position, artist, searchField);
+            viewed.playFromStart();
         });
     }
 
@@ -161,9 +232,28 @@ final class LibraryView {
         });
     }
 
+    /*
+     * partial: the search deadline passed before the current page was full, the albums shown are the best found so
+     * far and more are still being looked for.
+     */
+    final void searchProgress(final int shown, final int estimated, final double progress, final boolean partial,
+            final boolean complete) {
+        Platform.runLater(() -> {
+            if (complete) {
+                status.setText(shown + (shown == 1 ? " album" : " albums"));
+            } else if (partial) {
+                status.setText(shown + (shown == 1 ? " album" : " albums") + " so far, searching... "
+                    + Math.round(progress * 100) + "%");
+            } else {
+                status.setText(shown + " of ~" + estimated + " albums");
+            }
+        });
+    }
+
     final void searchStarted(final boolean allArtists) {
         Platform.runLater(() -> {
             searching.start();
+            status.setText("");
             albums.getChildren().clear();
             artists.clear();
             final Node value = allArtists ? artists : albums;
@@ -171,11 +261,62 @@ final class LibraryView {
         });
     }
 
+    /* shows the given error in the status line, from any thread. */
+    final void setError(final String error) {
+        Platform.runLater(() -> status.setText(error));
+    }
+
+    private void facetValues(final MenuButton mb, final Facet facet, final SearchHandler searchHandler) {
+        mb.getItems().clear();
+        searchHandler.facetCounts(facet, filter).forEach((value, count) -> {
+            final CheckMenuItem mi = new CheckMenuItem(value + " (" + count + ")");
+            mi.getStyleClass().add("peel-library-facet-value");
+            mi.setSelected(filter.selected(facet).contains(value));
+            mi.setOnAction(e -> {
+                filter = mi.isSelected() ? filter.select(facet, value) : filter.reset(facet, value);
+                final boolean active = !filter.selected(facet).isEmpty();
+                if (active && !mb.getStyleClass().contains("peel-library-facet-active")) {
+                    mb.getStyleClass().add("peel-library-facet-active");
+                } else if (!active) {
+                    mb.getStyleClass().remove("peel-library-facet-active");
+                }
+                searchHandler.filter(filter);
+                search(searchHandler);
+            });
+            mb.getItems().add(mi);
+        });
+    }
+
+    private void moreIfNeeded(final SearchHandler searchHandler) {
+        if (scrollPane.getContent() != albums || albums.getChildren().isEmpty()) {
+            return;
+        }
+        final boolean nearEnd = scrollPane.getVvalue() >= 0.9;
+        final boolean notFull = albums.prefHeight(albums.getWidth()) <= scrollPane.getViewportBounds().getHeight();
+        if (nearEnd || notFull) {
+            searchHandler.more();
+        }
+    }
+
+    private void scanProgress(final SearchHandler searchHandler) {
+        final ScanStatistics.Snapshot statistics = searchHandler.scanStatistics();
+        if (statistics.isRunning()) {
+            scan.setText("Scanning: " + statistics);
+        } else if (statistics.directories() > 0) {
+            scan.setText("Library scanned: " + statistics);
+            scanPolling.stop();
+        }
+    }
+
     private void search(final SearchHandler searchHandler) {
         final String text = searchField.getText();
-        if (text.isBlank()) {
+        if (text.isBlank() && filter.isEmpty()) {
             search.getChildren().remove(searchClear);
             searchHandler.searchArtists();
+        } else if (text.isBlank()) {
+            /* every album matching the filter. */
+            search.getChildren().remove(searchClear);
+            searchHandler.search((SearchType) searchType.getUserData(), text);
         } else {
             if (!search.getChildren().contains(searchClear)) {
                 search.getChildren().add(searchClear);
@@ -184,4 +325,32 @@ final class LibraryView {
         }
     }
 
-}
\ No newline at end of file
+    private void suggest(final List<String> names, final String text) {
+        if (names.isEmpty() || names.size() == 1 && names.get(0).equalsIgnoreCase(text)) {
+            suggestions.hide();
+            return;
+        }
+        suggestions.getItems().clear();
+        for (final String name : names) {
+            final MenuItem mi = new MenuItem(name);
+            mi.getStyleClass().add("peel-library-search-suggestion");
+            mi.setOnAction(e -> {
+                suggestions.hide();
+                searchField.setText(name);
+                searchField.positionCaret(name.length());
+            });
+            suggestions.getItems().add(mi);
+        }
+        if (!suggestions.isShowing()) {
+            suggestions.show(searchField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void visibleArtists(final SearchHandler searchHandler) {
+        if (scrollPane.getContent() != artists) {
+            return;
+        }
+        searchHandler.visible(artists.visible(scrollPane.localToScene(scrollPane.getBoundsInLocal())));
+    }
+
+}
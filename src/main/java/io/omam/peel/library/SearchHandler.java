@@ -30,9 +30,36 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.library;
 
+import java.util.List;
+import java.util.Map;
+
+import io.omam.peel.tracks.Facet;
+import io.omam.peel.tracks.FacetFilter;
+import io.omam.peel.tracks.ScanStatistics;
+
 interface SearchHandler {
 
+    /* number of tracks per value of the given facet, empty until the library is indexed. */
+    Map<String, Integer> facetCounts(final Facet facet, final FacetFilter filter);
+
+    /* narrows the following searches. */
+    void filter(final FacetFilter filter);
+
+    /* the user wants to see more results of the current search. */
+    void more();
+
+    /* the user is waiting for the given artist: scanned before anything else. */
+    void requested(final String artistName);
+
+    /* counters of the library scan, all roots together. */
+    ScanStatistics.Snapshot scanStatistics();
+
     void search(final SearchType searchType, final String text);
 
     void searchArtists();
+
+    List<String> suggest(final String text);
+
+    /* the given artists are on screen: scanned before the others. */
+    void visible(final List<String> artistNames);
 }
\ No newline at end of file
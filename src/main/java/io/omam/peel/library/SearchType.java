@@ -33,16 +33,16 @@ package io.omam.peel.library;
 enum SearchType {
 
     ARTIST,
-    ALBUM;
+    ALBUM,
+    TRACK,
+    ALL;
 
     final String display() {
         return name().toLowerCase() + ": ";
     }
 
     final SearchType toggle() {
-        if (this == ARTIST) {
-            return ALBUM;
-        }
-        return ARTIST;
+        final SearchType[] values = values();
+        return values[(ordinal() + 1) % values.length];
     }
 }
\ No newline at end of file
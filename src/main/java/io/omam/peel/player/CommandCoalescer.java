@@ -0,0 +1,120 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.player;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * merges the transport commands of a burst, so that clicking next five times sends a next and a single jump to the
+ * device: the first command of a burst is sent right away, those following within a short window are merged and
+ * sent when it closes, opening a new window.
+ */
+final class CommandCoalescer {
+
+    private static final long WINDOW = 150;
+
+    private final Consumer<TransportCommand> sink;
+
+    private final Executor delayed;
+
+    /* command of the current burst not yet sent, null if none. */
+    private TransportCommand pending;
+
+    /* whether a burst is in progress: commands are held until its window closes. */
+    private boolean open;
+
+    private long bursts;
+
+    CommandCoalescer(final Consumer<TransportCommand> aSink) {
+        sink = aSink;
+        delayed = CompletableFuture.delayedExecutor(WINDOW, TimeUnit.MILLISECONDS);
+        pending = null;
+        open = false;
+        bursts = 0;
+    }
+
+    /* sends the pending command right away and ends the burst, e.g. before a command that cannot be merged. */
+    final synchronized void flush() {
+        if (pending != null) {
+            sink.accept(pending);
+            pending = null;
+        }
+        open = false;
+        bursts++;
+    }
+
+    /*
+     * sends the given command right away if no burst is in progress, else merges it with the pending one; if they
+     * cannot be merged the pending one is sent right away and the given one held in its place.
+     */
+    final synchronized void submit(final TransportCommand command) {
+        if (!open) {
+            sink.accept(command);
+            open();
+            return;
+        }
+        if (pending != null) {
+            final Optional<TransportCommand> merged = pending.merge(command);
+            if (merged.isPresent()) {
+                pending = merged.get();
+                return;
+            }
+            sink.accept(pending);
+        }
+        pending = command;
+    }
+
+    /* sends the command held during the given window if any, in which case a new window is opened. */
+    private synchronized void close(final long burst) {
+        if (burst != bursts) {
+            return;
+        }
+        if (pending == null) {
+            open = false;
+        } else {
+            sink.accept(pending);
+            pending = null;
+            open();
+        }
+    }
+
+    private void open() {
+        open = true;
+        bursts++;
+        final long burst = bursts;
+        delayed.execute(() -> close(burst));
+    }
+
+}
@@ -35,12 +35,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import io.omam.peel.core.PeelThreadFactory;
+import io.omam.peel.player.DeviceActor.Lane;
 import io.omam.peel.server.UrlResolver;
 import io.omam.peel.tracks.Track;
 import io.omam.wire.device.CastDeviceController;
@@ -58,15 +67,57 @@ import io.omam.wire.media.QueueItem;
 
 final class ConnectedDeviceController implements MediaStatusListener, CastDeviceControllerListener {
 
+    /*
+     * tracks sent in a single request, with their entry key: only made when about to be sent, identifying a track
+     * not yet hashed by the indexer taking a few reads of its file.
+     */
+    private static final class Chunk {
+
+        final List<MediaInfo> medias;
+
+        final Map<String, Track> tracks;
+
+        Chunk() {
+            medias = new ArrayList<>();
+            tracks = new HashMap<>();
+        }
+
+    }
+
     @FunctionalInterface
     private static interface TrackLoader {
 
-        void accept(final List<MediaInfo> medias) throws IOException, TimeoutException, MediaRequestException;
+        MediaStatus accept(final List<MediaInfo> medias)
+                throws IOException, TimeoutException, MediaRequestException;
 
     }
 
     private static final Logger LOGGER = Logger.getLogger(ConnectedDeviceController.class.getName());
 
+    /* small enough for the device to answer before the request times out. */
+    private static final int CHUNK_SIZE = 25;
+
+    /* chunks sent one after the other before the queue of the device is read back. */
+    private static final int WINDOW = 4;
+
+    /* delay before the first read of the queue of the device after a request timed out, doubled every attempt. */
+    private static final long RECONCILE_DELAY = 500;
+
+    private static final long RECONCILE_MAX_DELAY = 8000;
+
+    private static final int RECONCILE_ATTEMPTS = 6;
+
+    /* deadlines of the requests, in milliseconds from when they are sent: a transport control is one request. */
+    private static final long TRANSPORT_DEADLINE = 3000;
+
+    /* stopping the playback, sending the first chunk and confirming it may take three requests. */
+    private static final long LOAD_DEADLINE = 15000;
+
+    /* removing, and reading the queue back if the returned status has a gap. */
+    private static final long REMOVE_DEADLINE = 8000;
+
+    private static final long READ_DEADLINE = 5000;
+
     private final CastDeviceController deviceController;
 
     private final MediaController mediaController;
@@ -77,6 +128,21 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
 
     private final MediaSession mediaSession;
 
+    /* sends the chunks following the first one, in order, and reconciles the queue after a timeout. */
+    private final ScheduledExecutorService loader;
+
+    /* incremented whenever the queue is replaced or cleared, cancelling the chunks still to be sent. */
+    private final AtomicLong loads;
+
+    /* loads whose chunks are still being sent. */
+    private final AtomicInteger pending;
+
+    /* whether the whole queue of the device is about to be read following a gap in a media status. */
+    private final AtomicBoolean resynching;
+
+    /* sends the requests: transport controls and queue changes each in order, both in flight together. */
+    private final DeviceActor actor;
+
     ConnectedDeviceController(final CastDeviceController aCastDeviceController,
             final MediaController aMediaController, final UrlResolver anUrlResolver) {
         deviceController = aCastDeviceController;
@@ -86,10 +152,28 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
         urlResolver = anUrlResolver;
         listeners = new ConcurrentLinkedQueue<>();
         mediaSession = new MediaSession();
+        loader = Executors.newSingleThreadScheduledExecutor(new PeelThreadFactory("queue-loader"));
+        loads = new AtomicLong();
+        pending = new AtomicInteger();
+        resynching = new AtomicBoolean();
+        actor = new DeviceActor();
+    }
+
+    /* the given tracks split in chunks; at least one chunk, maybe empty, is returned. */
+    private static List<List<Track>> split(final List<Track> tracks) {
+        final List<List<Track>> parts = new ArrayList<>();
+        for (int i = 0; i < tracks.size(); i += CHUNK_SIZE) {
+            parts.add(List.copyOf(tracks.subList(i, Math.min(tracks.size(), i + CHUNK_SIZE))));
+        }
+        if (parts.isEmpty()) {
+            parts.add(List.of());
+        }
+        return parts;
     }
 
     @Override
     public final void connectionDead() {
+        stopLoading();
         listeners.forEach(l -> l.connectionClosed(deviceController.deviceId(), "connection dropped"));
     }
 
@@ -106,6 +190,11 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
     @Override
     public final void mediaStatusUpdated(final MediaStatus newStatus, final boolean timeout) {
         mediaSession.update(newStatus);
+        if (!mediaSession.apply(newStatus.items(), Map.of()) && !loader.isShutdown()
+            && resynching.compareAndSet(false, true)) {
+            /* the queue has been changed by another sender. */
+            loader.execute(this::resynch);
+        }
         final PlayerState playerState = mediaSession.playerState();
         if (playerState == PlayerState.PAUSED) {
             listeners.forEach(ConnectedDeviceListener::playbackPaused);
@@ -129,6 +218,7 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
 
     @Override
     public final void remoteConnectionClosed() {
+        stopLoading();
         listeners.forEach(l -> l.connectionClosed(deviceController.deviceId(), "connection closed by device"));
     }
 
@@ -136,13 +226,9 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
         listeners.add(l);
     }
 
-    final QueueState appendToQueue(final List<Track> tracks)
-            throws IOException, TimeoutException, MediaRequestException {
-        if (mediaSession.isQueueEmpty()) {
-            return play(tracks);
-        }
-        // FIXME: 4 seconds is not enough
-        return queueTracks(tracks, mediaController::appendToQueue);
+    /* appends the given tracks to the queue, or plays them if it is empty. */
+    final CompletableFuture<QueueState> appendToQueueAsync(final List<Track> tracks) {
+        return actor.submit(Lane.QUEUE, LOAD_DEADLINE, () -> appendToQueue(tracks));
     }
 
     final String deviceId() {
@@ -154,6 +240,7 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
     }
 
     final void disconnect() {
+        stopLoading();
         mediaSession.reset();
         try {
             deviceController.stopApp(mediaController);
@@ -163,53 +250,354 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
         deviceController.disconnect();
     }
 
-    final void next() throws IOException, TimeoutException, MediaRequestException {
-        mediaController.next();
+    /* skips the given number of tracks, backwards if negative. */
+    final CompletableFuture<Void> jumpAsync(final int offset) {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, () -> {
+            mediaController.jump(offset);
+            return null;
+        });
     }
 
-    final QueueState play(final List<Track> tracks) throws IOException, TimeoutException, MediaRequestException {
-        if (mediaSession.playerState() != PlayerState.IDLE) {
+    final CompletableFuture<Void> nextAsync() {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, () -> {
+            mediaController.next();
+            return null;
+        });
+    }
+
+    /* replaces the queue with the given tracks, completing once the first ones are playing. */
+    final CompletableFuture<QueueState> playAsync(final List<Track> tracks) {
+        return actor.submit(Lane.QUEUE, LOAD_DEADLINE, () -> play(tracks));
+    }
+
+    /* jumps to the given track of the queue. */
+    final CompletableFuture<Void> playAsync(final Track track) {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, () -> {
+            mediaController.jump(mediaSession.jumpTo(track));
+            return null;
+        });
+    }
+
+    final PlayerState playerState() {
+        return mediaSession.playerState();
+    }
+
+    /* inserts the given tracks after the current one, or plays them if the queue is empty. */
+    final CompletableFuture<QueueState> playNextAsync(final List<Track> tracks) {
+        return actor.submit(Lane.QUEUE, LOAD_DEADLINE, () -> playNext(tracks));
+    }
+
+    final CompletableFuture<Void> prevAsync() {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, () -> {
+            mediaController.previous();
+            return null;
+        });
+    }
+
+    /*
+     * reads the whole queue of the device after the queue changes already submitted; e.g.
+     * appendToQueueAsync(tracks).thenCompose(q -> readQueueAsync()) to also take the changes made by other
+     * senders.
+     */
+    final CompletableFuture<QueueState> readQueueAsync() {
+        return actor.submit(Lane.QUEUE, READ_DEADLINE, this::readQueue);
+    }
+
+    final CompletableFuture<QueueState> removeFromQueueAsync(final int trackIndex) {
+        return actor.submit(Lane.QUEUE, REMOVE_DEADLINE, () -> removeFromQueue(trackIndex));
+    }
+
+    final void removeListener(final ConnectedDeviceListener l) {
+        listeners.remove(l);
+    }
+
+    final CompletableFuture<Void> stopPlaybackAsync() {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, () -> {
             stopPlayback();
+            return null;
+        });
+    }
+
+    /* completes with the player state once toggled. */
+    final CompletableFuture<PlayerState> togglePlaybackAsync() {
+        return actor.submit(Lane.TRANSPORT, TRANSPORT_DEADLINE, this::togglePlayback);
+    }
+
+    private QueueState appendToQueue(final List<Track> tracks)
+            throws IOException, TimeoutException, MediaRequestException {
+        if (mediaSession.isQueueEmpty() && pending.get() == 0) {
+            return play(tracks);
+        }
+        final TrackLoader append = mediaController::appendToQueue;
+        if (pending.get() == 0) {
+            return queueTracks(tracks, append, append);
+        }
+        /* tracks still being loaded stay ahead of those appended now. */
+        queueLater(split(tracks), append, 0, tracks.size());
+        return mediaSession.state();
+    }
+
+    /*
+     * confirms that the given tracks are in the queue of the device, from the status returned by the request that
+     * sent them if any. The whole queue is read back only if that status has a gap; tracks not found yet are
+     * looked for again later and the returned state is pending.
+     */
+    private QueueState confirm(final long load, final Optional<MediaStatus> status, final Map<String, Track> sent)
+            throws IOException, MediaRequestException {
+        if (status.isPresent() && loads.get() == load && mediaSession.apply(status.get().items(), sent)) {
+            return mediaSession.state();
+        }
+        QueueState state;
+        try {
+            final List<QueueItem> items = mediaController.getQueueItems();
+            if (loads.get() != load) {
+                /* replaced or cleared meanwhile. */
+                return mediaSession.state();
+            }
+            state = mediaSession.insertAll(items, sent);
+        } catch (final TimeoutException e) {
+            LOGGER.log(Level.FINE, e, () -> "Queue of the device not read");
+            state = mediaSession.state();
+        }
+        final Map<String, Track> missing = missing(sent);
+        if (missing.isEmpty()) {
+            return state;
+        }
+        reconcile(load, missing, 0);
+        return state.pending();
+    }
+
+    /* the media of the given tracks, with a new entry key each. */
+    private Chunk chunk(final List<Track> tracks) {
+        final Chunk chunk = new Chunk();
+        for (final Track track : tracks) {
+            try {
+                final String trackId = track.id();
+                final String uuid = mediaSession.newEntryKey(trackId);
+                final Object customData = Map.of(MediaSession.UUID_KEY, uuid, MediaSession.TRACK_ID_KEY, trackId);
+                final String contentId = urlResolver.resolveUrl(track.path());
+                final MediaInfo media = MediaInfo.fromDataStream(contentId, customData);
+                chunk.medias.add(media);
+                chunk.tracks.put(uuid, track);
+            } catch (final IOException | IllegalArgumentException e) {
+                /* e.g. the library root of the track is no longer served. */
+                LOGGER.log(Level.WARNING, e, () -> "Ignoring track " + track.name());
+            }
+        }
+        return chunk;
+    }
+
+    /*
+     * sends the given chunks in order, reading back the queue of the device every WINDOW chunks if the status
+     * returned for some chunk did not confirm it. A chunk whose request times out is not resent: the device may
+     * well have accepted it, which reading the queue tells.
+     */
+    private void load(final long load, final List<List<Track>> chunks, final TrackLoader trackLoader,
+            final int loaded, final int total) {
+        final Map<String, Track> unconfirmed = new HashMap<>();
+        int sent = loaded;
+        try {
+            for (int i = 0; i < chunks.size() && loads.get() == load; i++) {
+                final Chunk chunk = chunk(chunks.get(i));
+                try {
+                    if (!chunk.medias.isEmpty()) {
+                        final MediaStatus status = trackLoader.accept(chunk.medias);
+                        if (!mediaSession.apply(status.items(), chunk.tracks)) {
+                            unconfirmed.putAll(chunk.tracks);
+                        }
+                    }
+                } catch (final TimeoutException e) {
+                    LOGGER.log(Level.FINE, e,
+                            () -> "Chunk of " + chunk.medias.size() + " tracks not acknowledged");
+                    unconfirmed.putAll(chunk.tracks);
+                }
+                sent += chunks.get(i).size();
+                if ((i + 1) % WINDOW == 0 || i == chunks.size() - 1) {
+                    final QueueState state = unconfirmed.isEmpty() ? mediaSession.state()
+                            : confirm(load, Optional.empty(), new HashMap<>(unconfirmed));
+                    final int progress = sent;
+                    if (loads.get() == load) {
+                        listeners.forEach(l -> l.queueLoading(state, progress, total));
+                    }
+                    unconfirmed.clear();
+                }
+            }
+            if (loads.get() != load) {
+                /* replaced or cleared: the entries sent and not confirmed yet never will be. */
+                mediaSession.forget(unconfirmed.keySet());
+            }
+        } catch (final MediaRequestException e) {
+            listeners.forEach(l -> l.playbackError(e.error()));
+        } catch (final IOException e) {
+            listeners.forEach(l -> l.playbackError(e.getMessage()));
         }
-        // FIXME: 4 seconds is not enough
-        return queueTracks(tracks, mediaController::load);
     }
 
-    final void play(final Track track) throws IOException, TimeoutException, MediaRequestException {
-        mediaController.jump(mediaSession.jumpTo(track));
+    /* the given tracks not in the queue of the device when last read. */
+    private Map<String, Track> missing(final Map<String, Track> tracks) {
+        final Map<String, Track> missing = new HashMap<>(tracks);
+        missing.keySet().removeIf(mediaSession::isQueued);
+        return missing;
+    }
+
+    private QueueState play(final List<Track> tracks) throws IOException, TimeoutException, MediaRequestException {
+        loads.incrementAndGet();
+        if (mediaSession.playerState() != PlayerState.IDLE) {
+            stopPlayback();
+        } else {
+            /* the queue is replaced: its entries and the keys issued for it are dropped. */
+            mediaSession.reset();
+        }
+        return queueTracks(tracks, mediaController::load, mediaController::appendToQueue);
     }
 
-    final QueueState playNext(final List<Track> tracks)
+    private QueueState playNext(final List<Track> tracks)
             throws IOException, TimeoutException, MediaRequestException {
         if (mediaSession.isQueueEmpty()) {
             return play(tracks);
         }
-        return queueTracks(tracks, m -> mediaController.insertInQueue(mediaSession.nextItemId(), m));
+        /* every chunk is inserted before the same item, hence after the previous chunk. */
+        final int before = mediaSession.nextItemId();
+        final TrackLoader insert = m -> mediaController.insertInQueue(before, m);
+        return queueTracks(tracks, insert, insert);
+    }
+
+    /*
+     * reads the queue of the device again after a delay growing with the given attempt, until it holds all the
+     * given tracks: nothing is sent again, the device having most likely accepted them after the request timed
+     * out.
+     */
+    private void reconcile(final long load, final Map<String, Track> missing, final int attempt) {
+        if (loader.isShutdown()) {
+            /* connection lost. */
+            return;
+        }
+        final long delay = Math.min(RECONCILE_MAX_DELAY, RECONCILE_DELAY << attempt);
+        loader.schedule(() -> {
+            if (loads.get() != load) {
+                return;
+            }
+            try {
+                QueueState state;
+                try {
+                    state = mediaSession.insertAll(mediaController.getQueueItems(), missing);
+                } catch (final TimeoutException e) {
+                    LOGGER.log(Level.FINE, e, () -> "Queue of the device not read");
+                    state = mediaSession.state();
+                }
+                final Map<String, Track> stillMissing = missing(missing);
+                final QueueState reconciled;
+                if (stillMissing.isEmpty()) {
+                    reconciled = state;
+                } else if (attempt + 1 < RECONCILE_ATTEMPTS) {
+                    reconciled = state.pending();
+                    reconcile(load, stillMissing, attempt + 1);
+                } else {
+                    LOGGER.warning(
+                            () -> stillMissing.size() + " tracks never appeared in the queue of the device");
+                    reconciled = new QueueState(state.tracks, state.currentTrack, true);
+                }
+                listeners.forEach(l -> l.queueReconciled(reconciled));
+            } catch (final MediaRequestException e) {
+                listeners.forEach(l -> l.playbackError(e.error()));
+            } catch (final IOException e) {
+                listeners.forEach(l -> l.playbackError(e.getMessage()));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
-    final void prev() throws IOException, TimeoutException, MediaRequestException {
-        mediaController.previous();
+    /* reads the whole queue of the device: entries removed are dropped, those queued by this session kept. */
+    private QueueState readQueue() throws IOException, TimeoutException, MediaRequestException {
+        final List<QueueItem> items = mediaController.getQueueItems();
+        mediaSession.synch(items);
+        return mediaSession.insertAll(items, Map.of());
     }
 
-    final QueueState removeFromQueue(final int trackIndex)
+    private QueueState removeFromQueue(final int trackIndex)
             throws IOException, TimeoutException, MediaRequestException {
         final int id = mediaSession.itemId(trackIndex);
-        mediaController.removeFromQueue(List.of(id));
-        final List<QueueItem> items = mediaController.getQueueItems();
-        return mediaSession.synch(items);
+        final MediaStatus status = mediaController.removeFromQueue(List.of(id));
+        mediaSession.remove(id);
+        if (mediaSession.apply(status.items(), Map.of())) {
+            return mediaSession.state();
+        }
+        return mediaSession.synch(mediaController.getQueueItems());
     }
 
-    final void removeListener(final ConnectedDeviceListener l) {
-        listeners.remove(l);
+    /* reads the whole queue of the device, after a media status revealed a change made by another sender. */
+    private void resynch() {
+        resynching.set(false);
+        try {
+            final QueueState state = readQueue();
+            listeners.forEach(l -> l.queueReconciled(state));
+        } catch (final MediaRequestException e) {
+            listeners.forEach(l -> l.playbackError(e.error()));
+        } catch (final IOException | TimeoutException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not read the queue of the device");
+        }
+    }
+
+    /* sends the given chunks after those of the loads still pending, without waiting. */
+    private void queueLater(final List<List<Track>> chunks, final TrackLoader trackLoader, final int loaded,
+            final int total) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        final long load = loads.get();
+        pending.incrementAndGet();
+        loader.execute(() -> {
+            try {
+                load(load, chunks, trackLoader, loaded, total);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
     }
 
-    final void stopPlayback() throws IOException, TimeoutException, MediaRequestException {
+    /*
+     * sends the first chunk of the given tracks with the first loader and returns once it is in the queue of the
+     * device - when playback has started if loading; the other chunks are sent in the background with the second
+     * loader.
+     */
+    private QueueState queueTracks(final List<Track> tracks, final TrackLoader first, final TrackLoader rest)
+            throws IOException, TimeoutException, MediaRequestException {
+        final List<List<Track>> chunks = split(tracks);
+        final Chunk head = chunk(chunks.get(0));
+        Optional<MediaStatus> status;
+        try {
+            status = Optional.of(first.accept(head.medias));
+        } catch (final TimeoutException e) {
+            LOGGER.log(Level.FINE, e, () -> "Queue request not acknowledged");
+            status = Optional.empty();
+        }
+        final QueueState state = confirm(loads.get(), status, head.tracks);
+        final int loaded = chunks.get(0).size();
+        if (chunks.size() > 1) {
+            final int total = tracks.size();
+            listeners.forEach(l -> l.queueLoading(state, loaded, total));
+            queueLater(chunks.subList(1, chunks.size()), rest, loaded, total);
+        }
+        return state;
+    }
+
+    /*
+     * cancels the chunks still to be sent, the reads of the queue still to come and the requests not sent yet: the
+     * device is gone.
+     */
+    private void stopLoading() {
+        loads.incrementAndGet();
+        loader.shutdownNow();
+        actor.shutdown();
+    }
+
+    private void stopPlayback() throws IOException, TimeoutException, MediaRequestException {
         /* no media status unsolicited message. */
+        loads.incrementAndGet();
         mediaController.stop();
         mediaSession.reset();
     }
 
-    final PlayerState togglePlayback() throws IOException, TimeoutException, MediaRequestException {
+    private PlayerState togglePlayback() throws IOException, TimeoutException, MediaRequestException {
         /* no media status unsolicited message. */
         final MediaStatus status;
         if (mediaSession.playerState() == PlayerState.PLAYING) {
@@ -222,26 +610,4 @@ final class ConnectedDeviceController implements MediaStatusListener, CastDevice
         return playerState;
     }
 
-    private QueueState queueTracks(final List<Track> tracks, final TrackLoader loader)
-            throws IOException, TimeoutException, MediaRequestException {
-        final List<MediaInfo> medias = new ArrayList<>();
-        final Map<String, Track> mapped = new HashMap<>();
-        for (final Track track : tracks) {
-            try {
-                final String uuid = UUID.randomUUID().toString();
-                final Object customData = Map.of(MediaSession.UUID_KEY, uuid);
-                final String contentId = urlResolver.resolveUrl(track.path());
-                final MediaInfo media = MediaInfo.fromDataStream(contentId, customData);
-                medias.add(media);
-                mapped.put(uuid, track);
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, e, () -> "Ignoring track " + track.name());
-            }
-        }
-        loader.accept(medias);
-        // FIXME load can timeout but device has accepted the tracks; should schedule retry to get the queue items.
-        final List<QueueItem> items = mediaController.getQueueItems();
-        return mediaSession.insertAll(items, mapped);
-    }
-
 }
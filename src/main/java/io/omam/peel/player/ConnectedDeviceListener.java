@@ -49,4 +49,10 @@ interface ConnectedDeviceListener {
 
     void playbackStopped();
 
+    /* the first given number of the given total of tracks being queued have been sent to the device. */
+    void queueLoading(final QueueState state, final int loaded, final int total);
+
+    /* the queue of the device has been read again after a request timed out. */
+    void queueReconciled(final QueueState state);
+
 }
\ No newline at end of file
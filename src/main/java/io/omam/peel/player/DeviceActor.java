@@ -0,0 +1,107 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.player;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.omam.peel.core.PeelThreadFactory;
+import io.omam.wire.media.MediaRequestException;
+
+/*
+ * runs the requests to the connected device, one at a time and in order per lane, the lanes side by side: a
+ * transport control is in flight together with the queue change in progress, so that a bulk queue load never
+ * delays pause or next.
+ */
+final class DeviceActor {
+
+    enum Lane {
+        TRANSPORT,
+        QUEUE;
+    }
+
+    @FunctionalInterface
+    static interface Request<T> {
+
+        T call() throws IOException, TimeoutException, MediaRequestException;
+
+    }
+
+    private final Map<Lane, ExecutorService> lanes;
+
+    DeviceActor() {
+        lanes = new EnumMap<>(Lane.class);
+        for (final Lane lane : Lane.values()) {
+            final String name = "device-" + lane.name().toLowerCase(Locale.ROOT);
+            lanes.put(lane, Executors.newSingleThreadExecutor(new PeelThreadFactory(name)));
+        }
+    }
+
+    /*
+     * runs the given request after those of the same lane without blocking the caller. The returned future fails
+     * with an IOException if the device is disconnected, and with a TimeoutException if the request has not
+     * completed within the given deadline in milliseconds once started; a request cancelled before it started is
+     * never sent.
+     */
+    final <T> CompletableFuture<T> submit(final Lane lane, final long deadline, final Request<T> request) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            lanes.get(lane).execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                result.orTimeout(deadline, TimeUnit.MILLISECONDS);
+                try {
+                    result.complete(request.call());
+                } catch (final Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Device disconnected", e));
+        }
+        return result;
+    }
+
+    /* discards the requests not yet started. */
+    final void shutdown() {
+        lanes.values().forEach(ExecutorService::shutdownNow);
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * a sequence indexed by position: a treap ordered by position whose nodes know their parent and the size of their
+ * subtree. Getting the node at a position, the position of a node, inserting and removing a node are O(log n) in
+ * expectation. Nodes are handles: they stay valid, their position following the changes of the sequence, until
+ * removed.
+ */
+final class IndexedSequence<E> {
+
+    static final class Node<E> {
+
+        final E value;
+
+        /* random: the tree is a heap of priorities, which keeps it balanced in expectation. */
+        private final int priority;
+
+        private Node<E> left;
+
+        private Node<E> right;
+
+        private Node<E> parent;
+
+        private int size;
+
+        Node(final E aValue) {
+            value = aValue;
+            priority = ThreadLocalRandom.current().nextInt();
+            detach();
+        }
+
+        private void detach() {
+            left = null;
+            right = null;
+            parent = null;
+            size = 1;
+        }
+
+        private void resize() {
+            size = size(left) + size(right) + 1;
+        }
+
+    }
+
+    private Node<E> root;
+
+    IndexedSequence() {
+        root = null;
+    }
+
+    private static int size(final Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    final void clear() {
+        root = null;
+    }
+
+    /* the node at the given position, in [0, size). */
+    final Node<E> get(final int position) {
+        Node<E> node = root;
+        int p = position;
+        while (true) {
+            final int l = size(node.left);
+            if (p < l) {
+                node = node.left;
+            } else if (p == l) {
+                return node;
+            } else {
+                p -= l + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /* inserts the given value at the given position, in [0, size], returns its node. */
+    final Node<E> insert(final int position, final E value) {
+        final Node<E> node = new Node<>(value);
+        if (root == null) {
+            root = node;
+            return node;
+        }
+        Node<E> parent = root;
+        int p = position;
+        while (true) {
+            parent.size++;
+            final int l = size(parent.left);
+            if (p <= l) {
+                if (parent.left == null) {
+                    parent.left = node;
+                    break;
+                }
+                parent = parent.left;
+            } else {
+                p -= l + 1;
+                if (parent.right == null) {
+                    parent.right = node;
+                    break;
+                }
+                parent = parent.right;
+            }
+        }
+        node.parent = parent;
+        while (node.parent != null && node.parent.priority < node.priority) {
+            rotateUp(node);
+        }
+        return node;
+    }
+
+    final boolean isEmpty() {
+        return root == null;
+    }
+
+    /* every node, in order. */
+    final List<Node<E>> nodes() {
+        final List<Node<E>> nodes = new ArrayList<>(size());
+        final Deque<Node<E>> path = new ArrayDeque<>();
+        Node<E> node = root;
+        while (node != null || !path.isEmpty()) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+            node = path.pop();
+            nodes.add(node);
+            node = node.right;
+        }
+        return nodes;
+    }
+
+    /* the position of the given node, which must be in this sequence. */
+    final int position(final Node<E> node) {
+        int position = size(node.left);
+        for (Node<E> n = node; n.parent != null; n = n.parent) {
+            if (n == n.parent.right) {
+                position += size(n.parent.left) + 1;
+            }
+        }
+        return position;
+    }
+
+    /*
+     * the given nodes, in their order, become the sequence: nodes of this sequence and new ones alike, the others
+     * being dropped. Linear in the number of nodes.
+     */
+    final void rebuild(final List<Node<E>> nodes) {
+        /* right spine of the tree built so far, bottom first. */
+        final Deque<Node<E>> spine = new ArrayDeque<>();
+        for (final Node<E> node : nodes) {
+            node.detach();
+            Node<E> last = null;
+            while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+                last = spine.pop();
+            }
+            node.left = last;
+            if (last != null) {
+                last.parent = node;
+            }
+            if (!spine.isEmpty()) {
+                spine.peek().right = node;
+                node.parent = spine.peek();
+            }
+            spine.push(node);
+        }
+        root = spine.peekLast();
+        resizeAll(root);
+    }
+
+    /* removes the given node, which must be in this sequence. */
+    final void remove(final Node<E> node) {
+        while (node.left != null && node.right != null) {
+            rotateUp(node.left.priority > node.right.priority ? node.left : node.right);
+        }
+        final Node<E> child = node.left != null ? node.left : node.right;
+        final Node<E> parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        if (parent == null) {
+            root = child;
+        } else if (parent.left == node) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        for (Node<E> n = parent; n != null; n = n.parent) {
+            n.size--;
+        }
+        node.detach();
+    }
+
+    final int size() {
+        return size(root);
+    }
+
+    /* every value, in order. */
+    final List<E> values() {
+        final List<E> values = new ArrayList<>(size());
+        nodes().forEach(n -> values.add(n.value));
+        return values;
+    }
+
+    /* sizes of the subtree of the given node, computed bottom up. */
+    private void resizeAll(final Node<E> node) {
+        if (node != null) {
+            resizeAll(node.left);
+            resizeAll(node.right);
+            node.resize();
+        }
+    }
+
+    /* moves the given node above its parent, the order of the sequence being unchanged. */
+    private void rotateUp(final Node<E> node) {
+        final Node<E> parent = node.parent;
+        final Node<E> grandParent = parent.parent;
+        if (node == parent.left) {
+            parent.left = node.right;
+            if (node.right != null) {
+                node.right.parent = parent;
+            }
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null) {
+                node.left.parent = parent;
+            }
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+        if (grandParent == null) {
+            root = node;
+        } else if (grandParent.left == parent) {
+            grandParent.left = node;
+        } else {
+            grandParent.right = node;
+        }
+        parent.resize();
+        node.resize();
+    }
+
+}
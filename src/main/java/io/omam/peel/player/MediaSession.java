@@ -31,11 +31,16 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package io.omam.peel.player;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+import io.omam.peel.player.IndexedSequence.Node;
 import io.omam.peel.tracks.Track;
 import io.omam.wire.media.MediaInfo;
 import io.omam.wire.media.MediaStatus;
@@ -62,7 +67,25 @@ final class MediaSession {
 
     static final String UUID_KEY = "UUID";
 
-    private final List<QueueTrack> queue;
+    static final String TRACK_ID_KEY = "TRACK_ID";
+
+    /*
+     * the queue in device order, indexed by position, and its entries by uuid, by item id and by track: positions
+     * are never stored, so that inserting or removing an entry is O(log n) whatever its position.
+     */
+    private final IndexedSequence<QueueTrack> queue;
+
+    private final Map<String, Node<QueueTrack>> uuidEntries;
+
+    private final Map<Integer, Node<QueueTrack>> itemEntries;
+
+    /* entries of every track, tracks being compared by identity as the same track can be queued twice. */
+    private final Map<Track, List<Node<QueueTrack>>> trackEntries;
+
+    private long entries;
+
+    /* keys issued by this session and not yet found in the queue of the device, nor given up on. */
+    private final Set<String> issued;
 
     private PlayerState playerState;
 
@@ -71,121 +94,205 @@ final class MediaSession {
     private Optional<Integer> currentItemId;
 
     MediaSession() {
-        queue = new ArrayList<>();
+        queue = new IndexedSequence<>();
+        uuidEntries = new HashMap<>();
+        itemEntries = new HashMap<>();
+        trackEntries = new IdentityHashMap<>();
+        issued = new HashSet<>();
+        /* never reuse the keys of a previous session still known by the device. */
+        entries = System.currentTimeMillis();
         playerState = PlayerState.IDLE;
         currentMedia = null;
     }
 
-    final Optional<Track> currentTrack() {
+    /*
+     * applies the given items of the device - its whole queue or only some consecutive items of it, as found in a
+     * media status - adding the entries of the given tracks after the item preceding them. Returns false, leaving
+     * the queue unchanged, on a gap: an item not queued by this session, or a given track not among the items; the
+     * whole queue must then be read. O(log n) per entry added, whatever its position.
+     */
+    final synchronized boolean apply(final List<QueueItem> items, final Map<String, Track> tracks) {
+        /* new entries before the first known item, and after each known item. */
+        final List<QueueTrack> leading = new ArrayList<>();
+        final Map<String, List<QueueTrack>> following = new HashMap<>();
+        String first = null;
+        String previous = null;
+        int added = 0;
+        for (final QueueItem item : items) {
+            final Optional<String> optUuid = uuid(item.media());
+            if (optUuid.isEmpty()) {
+                return false;
+            }
+            final String uuid = optUuid.get();
+            if (uuidEntries.containsKey(uuid)) {
+                first = first == null ? uuid : first;
+                previous = uuid;
+            } else if (tracks.containsKey(uuid)) {
+                final QueueTrack qt = new QueueTrack(uuid, tracks.get(uuid), item);
+                if (previous == null) {
+                    leading.add(qt);
+                } else {
+                    following.computeIfAbsent(previous, k -> new ArrayList<>()).add(qt);
+                }
+                added++;
+            } else if (!issued.contains(uuid)) {
+                return false;
+            }
+            /* else sent by a request not yet confirmed: placed by it. */
+        }
+        if (added != tracks.size() || first == null && !leading.isEmpty() && !queue.isEmpty()) {
+            return false;
+        }
+        following.forEach((uuid, qts) -> insert(queue.position(uuidEntries.get(uuid)) + 1, qts));
+        if (!leading.isEmpty()) {
+            insert(first == null ? 0 : queue.position(uuidEntries.get(first)), leading);
+        }
+        return true;
+    }
+
+    final synchronized Optional<Track> currentTrack() {
         return Optional.ofNullable(currentMedia).flatMap(this::track).map(qt -> qt.track);
     }
 
-    final QueueState insertAll(final List<QueueItem> items, final Map<String, Track> tracks) {
+    /*
+     * the queue becomes the given items of the device, in their order: entries already known are kept, those of
+     * the given tracks are added. Linear in the number of items, whatever the number of tracks added; only the
+     * entries added are indexed.
+     */
+    final synchronized QueueState insertAll(final List<QueueItem> items, final Map<String, Track> tracks) {
         boolean unsynch = false;
+        final List<Node<QueueTrack>> next = new ArrayList<>(Math.max(items.size(), queue.size()));
+        final Set<Node<QueueTrack>> placed = new HashSet<>();
         for (int i = 0; i < items.size() && !unsynch; i++) {
             final QueueItem item = items.get(i);
-            if (item.media().customData().isEmpty()) {
+            final Optional<String> optUuid = uuid(item.media());
+            if (optUuid.isEmpty()) {
                 unsynch = true;
             } else {
-                final Optional<String> optUuid = uuid(item.media());
-                if (optUuid.isEmpty()) {
-                    unsynch = true;
-                } else {
-                    final String uuid = optUuid.get();
-                    if (tracks.containsKey(uuid) && queue.stream().noneMatch(qt -> qt.uuid.equals(uuid))) {
-                        final QueueTrack qt = new QueueTrack(uuid, tracks.get(uuid), item);
-                        try {
-                            queue.add(i, qt);
-                        } catch (final IndexOutOfBoundsException e) {
-                            unsynch = true;
-                        }
-                    }
+                final String uuid = optUuid.get();
+                final Node<QueueTrack> known = uuidEntries.get(uuid);
+                if (known != null && placed.add(known)) {
+                    next.add(known);
+                } else if (known == null && tracks.containsKey(uuid)) {
+                    final Node<QueueTrack> entry = new Node<>(new QueueTrack(uuid, tracks.get(uuid), item));
+                    index(entry);
+                    placed.add(entry);
+                    next.add(entry);
                 }
             }
         }
+        /* entries not placed - e.g. after an unknown item - are kept in their order: only synch removes. */
+        queue.nodes().stream().filter(e -> !placed.contains(e)).forEach(next::add);
+        queue.rebuild(next);
         return state(unsynch);
     }
 
-    final boolean isQueueEmpty() {
+    /* forgets the given keys, issued for a load since cancelled: they will never be found. */
+    final synchronized void forget(final Collection<String> keys) {
+        issued.removeAll(keys);
+    }
+
+    final synchronized boolean isQueueEmpty() {
         return queue.isEmpty();
     }
 
-    final int itemId(final int trackIndex) {
-        try {
-            return queue.get(trackIndex).item.itemId();
-        } catch (final IndexOutOfBoundsException e) {
+    /* whether the entry of the given key is in the queue of the device. */
+    final synchronized boolean isQueued(final String uuid) {
+        return uuidEntries.containsKey(uuid);
+    }
+
+    final synchronized int itemId(final int trackIndex) {
+        if (trackIndex < 0 || trackIndex >= queue.size()) {
             return -1;
         }
+        return queue.get(trackIndex).value.item.itemId();
     }
 
-    final int jumpTo(final Track track) {
+    final synchronized int jumpTo(final Track track) {
         if (currentItemId.isEmpty()) {
             return 0;
         }
-
-        final int curId = currentItemId.get();
-        int currentIndex = -1;
-        for (int i = 0; i < queue.size(); i++) {
-            final MediaSession.QueueTrack qt = queue.get(i);
-            if (qt.item.itemId() == curId) {
-                currentIndex = i;
-                break;
-            }
-        }
-        if (currentIndex == -1) {
-            return 0;
-        }
-
-        int jumpIndex = -1;
-        for (int i = 0; i < queue.size(); i++) {
-            if (queue.get(i).track == track) {
-                jumpIndex = i;
-                break;
-            }
-        }
-        if (jumpIndex == -1) {
+        final Node<QueueTrack> current = itemEntries.get(currentItemId.get());
+        final List<Node<QueueTrack>> jumps = trackEntries.get(track);
+        if (current == null || jumps == null) {
             return 0;
         }
+        /* the first entry of the track. */
+        final int jumpIndex = jumps.stream().mapToInt(queue::position).min().getAsInt();
+        return jumpIndex - queue.position(current);
+    }
 
-        return jumpIndex - currentIndex;
+    /*
+     * key of a new queue entry for the given track: the same track can be queued several times.
+     */
+    final synchronized String newEntryKey(final String trackId) {
+        entries++;
+        final String key = trackId + ":" + Long.toString(entries, Character.MAX_RADIX);
+        issued.add(key);
+        return key;
     }
 
-    final int nextItemId() {
+    final synchronized int nextItemId() {
         if (currentItemId.isEmpty()) {
             return -1;
         }
-        final int current = currentItemId.get();
-        final Optional<QueueItem> next =
-                queue.stream().dropWhile(i -> i.item.itemId() != current).skip(1).findFirst().map(qt -> qt.item);
-        return next.map(QueueItem::itemId).orElse(-1);
+        final Node<QueueTrack> current = itemEntries.get(currentItemId.get());
+        if (current == null) {
+            return -1;
+        }
+        final int next = queue.position(current) + 1;
+        if (next >= queue.size()) {
+            return -1;
+        }
+        return queue.get(next).value.item.itemId();
     }
 
-    final PlayerState playerState() {
+    final synchronized PlayerState playerState() {
         return playerState;
     }
 
-    final void reset() {
+    /* removes the entry of the given item, once removed from the queue of the device. */
+    final synchronized void remove(final int itemId) {
+        final Node<QueueTrack> entry = itemEntries.get(itemId);
+        if (entry != null) {
+            unindex(entry);
+            queue.remove(entry);
+        }
+    }
+
+    final synchronized void reset() {
         queue.clear();
+        uuidEntries.clear();
+        itemEntries.clear();
+        trackEntries.clear();
+        /* the loads still sending entries are cancelled. */
+        issued.clear();
         playerState = PlayerState.IDLE;
         currentMedia = null;
     }
 
-    final void setPlayerState(final PlayerState state) {
+    final synchronized void setPlayerState(final PlayerState state) {
         playerState = state;
     }
 
-    final QueueState synch(final List<QueueItem> items) {
-        final List<String> uuids = items
-            .stream()
-            .map(i -> uuid(i.media()))
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .collect(Collectors.toList());
-        queue.removeIf(qt -> !uuids.contains(qt.uuid));
+    final synchronized QueueState state() {
         return state(false);
     }
 
-    final void update(final MediaStatus newStatus) {
+    /* drops the entries no longer among the given items of the device: O(log n) per entry dropped. */
+    final synchronized QueueState synch(final List<QueueItem> items) {
+        final Set<String> uuids = new HashSet<>();
+        items.forEach(i -> uuid(i.media()).ifPresent(uuids::add));
+        for (final Node<QueueTrack> entry : queue.nodes()) {
+            if (!uuids.contains(entry.value.uuid)) {
+                unindex(entry);
+                queue.remove(entry);
+            }
+        }
+        return state(false);
+    }
+
+    final synchronized void update(final MediaStatus newStatus) {
         if (newStatus.media().isPresent()) {
             currentMedia = newStatus.media().get();
         }
@@ -193,13 +300,44 @@ final class MediaSession {
         playerState = newStatus.playerState();
     }
 
+    /* indexes the given entry, not yet in the queue. */
+    private void index(final Node<QueueTrack> entry) {
+        final QueueTrack qt = entry.value;
+        uuidEntries.put(qt.uuid, entry);
+        issued.remove(qt.uuid);
+        itemEntries.put(qt.item.itemId(), entry);
+        trackEntries.computeIfAbsent(qt.track, t -> new ArrayList<>(1)).add(entry);
+    }
+
+    /* inserts the given entries from the given position, in their order. */
+    private void insert(final int position, final List<QueueTrack> qts) {
+        int p = position;
+        for (final QueueTrack qt : qts) {
+            index(queue.insert(p, qt));
+            p++;
+        }
+    }
+
     private QueueState state(final boolean unsynch) {
-        return new QueueState(queue.stream().map(qt -> qt.track).collect(Collectors.toList()), currentTrack(),
-                              unsynch);
+        final List<Track> tracks = new ArrayList<>(queue.size());
+        queue.values().forEach(qt -> tracks.add(qt.track));
+        return new QueueState(tracks, currentTrack(), unsynch);
     }
 
     private Optional<QueueTrack> track(final MediaInfo media) {
-        return uuid(media).flatMap(u -> queue.stream().filter(qt -> qt.uuid.equals(u)).findFirst());
+        return uuid(media).map(uuidEntries::get).map(e -> e.value);
+    }
+
+    /* forgets the given entry, about to be removed from the queue. */
+    private void unindex(final Node<QueueTrack> entry) {
+        final QueueTrack qt = entry.value;
+        uuidEntries.remove(qt.uuid);
+        itemEntries.remove(qt.item.itemId());
+        final List<Node<QueueTrack>> trackEntry = trackEntries.get(qt.track);
+        trackEntry.remove(entry);
+        if (trackEntry.isEmpty()) {
+            trackEntries.remove(qt.track);
+        }
     }
 
     @SuppressWarnings("unchecked")
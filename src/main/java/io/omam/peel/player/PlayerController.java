@@ -34,9 +34,13 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import io.omam.peel.core.PeelThreadFactory;
 import io.omam.peel.server.UrlResolver;
@@ -53,20 +57,6 @@ import javafx.scene.Node;
 public final class PlayerController
         implements CastDeviceBrowserListener, ActionHandler, Playback, ConnectedDeviceListener {
 
-    @FunctionalInterface
-    private static interface PlaybackTask {
-
-        void run() throws IOException, TimeoutException, MediaRequestException;
-
-    }
-
-    @FunctionalInterface
-    private static interface QueueTask {
-
-        QueueState run() throws IOException, TimeoutException, MediaRequestException;
-
-    }
-
     static final String PLAYBACK_ERROR = "Playback error: ";
 
     private final UrlResolver urlResolver;
@@ -77,16 +67,21 @@ public final class PlayerController
 
     private final Map<String, CastDeviceController> controllers;
 
-    private final ExecutorService executor;
+    /* discovered devices, connection and disconnection. */
+    private final ExecutorService discovery;
+
+    /* the connected device, null if none; only set by the discovery lane. */
+    private volatile ConnectedDeviceController connected;
 
-    private ConnectedDeviceController connected;
+    private final CommandCoalescer transport;
 
     public PlayerController(final UrlResolver anUrlResolver) {
         urlResolver = anUrlResolver;
         view = new PlayerView(this);
         controllers = new HashMap<>();
-        executor = Executors.newSingleThreadExecutor(new PeelThreadFactory("player"));
+        discovery = Executors.newSingleThreadExecutor(new PeelThreadFactory("player-discovery"));
         connected = null;
+        transport = new CommandCoalescer(this::send);
     }
 
     private static String errToString(final Error error) {
@@ -95,7 +90,7 @@ public final class PlayerController
 
     @Override
     public final void connectionClosed(final String deviceId, final String reason) {
-        executor.execute(() -> {
+        discovery.execute(() -> {
             connected = null;
             view.deviceDisconnected(deviceId, reason);
         });
@@ -103,7 +98,7 @@ public final class PlayerController
 
     @Override
     public final void deviceDiscovered(final CastDeviceController controller) {
-        executor.execute(() -> {
+        discovery.execute(() -> {
             final String deviceId = controller.deviceId();
             controllers.put(deviceId, controller);
             view.addDevice(deviceId, controller.deviceName());
@@ -115,7 +110,7 @@ public final class PlayerController
 
     @Override
     public final void deviceRemoved(final CastDeviceController controller) {
-        executor.execute(() -> {
+        discovery.execute(() -> {
             final String deviceId = controller.deviceId();
             controllers.remove(deviceId);
             if (connected != null && connected.deviceId().equals(deviceId)) {
@@ -129,79 +124,90 @@ public final class PlayerController
 
     @Override
     public final void newTrackPlaying(final Track track) {
-        executor.execute(() -> view.setCurrentTrack(track));
+        view.setCurrentTrack(track);
     }
 
     @Override
     public final void next() {
-        executePlayback(() -> connected.next());
+        transport.submit(TransportCommand.next());
     }
 
     @Override
     public final void play(final Track track) {
-        executePlayback(() -> connected.play(track));
+        transport.flush();
+        execute(d -> d.playAsync(track), v -> {
+        });
     }
 
     @Override
     public final void playbackError(final Error error) {
-        final String msg = errToString(error);
-        executor.execute(() -> view.setError(msg));
+        view.setError(errToString(error));
     }
 
     @Override
     public final void playbackError(final String error) {
-        final String msg = PLAYBACK_ERROR + error;
-        executor.execute(() -> view.setError(msg));
+        view.setError(PLAYBACK_ERROR + error);
     }
 
     @Override
     public final void playbackFinished() {
-        executor.execute(() -> view.resetCurrentTrack());
+        view.resetCurrentTrack();
     }
 
     @Override
     public final void playbackPaused() {
-        executor.execute(() -> view.setPause());
+        view.setPause();
     }
 
     @Override
     public final void playbackStopped() {
-        executor.execute(() -> view.clearQueue());
+        view.clearQueue();
     }
 
     @Override
     public final void playTracks(final List<Track> tracks) {
-        executeQueue(() -> connected.play(tracks));
+        executeQueue(d -> d.playAsync(tracks));
     }
 
     @Override
     public final void prev() {
-        executePlayback(() -> connected.prev());
+        transport.submit(TransportCommand.previous());
+    }
+
+    @Override
+    public final void queueLoading(final QueueState state, final int loaded, final int total) {
+        view.setQueue(state.tracks, state.currentTrack, state.unsynch, state.pending);
+        view.setLoading(loaded, total);
+    }
+
+    @Override
+    public final void queueReconciled(final QueueState state) {
+        view.setQueue(state.tracks, state.currentTrack, state.unsynch, state.pending);
     }
 
     @Override
     public final void queueTracksLast(final List<Track> tracks) {
-        executeQueue(() -> connected.appendToQueue(tracks));
+        executeQueue(d -> d.appendToQueueAsync(tracks));
     }
 
     @Override
     public final void queueTracksNext(final List<Track> tracks) {
-        executeQueue(() -> connected.playNext(tracks));
+        executeQueue(d -> d.playNextAsync(tracks));
     }
 
     @Override
     public final void removeFromQueue(final int trackIndex) {
-        executeQueue(() -> connected.removeFromQueue(trackIndex));
+        executeQueue(d -> d.removeFromQueueAsync(trackIndex));
     }
 
     @Override
     public final void requestConnection(final String deviceId) {
-        executor.execute(() -> internalRequestConnection(deviceId));
+        discovery.execute(() -> internalRequestConnection(deviceId));
     }
 
     @Override
     public final void requestDisconnection(final String deviceId) {
-        executor.execute(() -> {
+        discovery.execute(() -> {
             view.waiting();
             if (connected != null) {
                 connected.disconnect();
@@ -212,7 +218,7 @@ public final class PlayerController
     }
 
     public final void shutdown() {
-        executor.shutdownNow();
+        discovery.shutdownNow();
         if (connected != null) {
             connected.disconnect();
         }
@@ -228,91 +234,104 @@ public final class PlayerController
 
     @Override
     public final void stopPlayback() {
-        executePlayback(() -> {
-            connected.stopPlayback();
-            view.clearQueue();
-        });
+        transport.flush();
+        execute(ConnectedDeviceController::stopPlaybackAsync, v -> view.clearQueue());
     }
 
     @Override
     public final void togglePlayback() {
-        executePlayback(() -> {
-            final PlayerState state = connected.togglePlayback();
-            if (state == PlayerState.PAUSED) {
-                view.setPause();
-            } else {
-                view.setPlay();
-            }
-        });
-
+        transport.submit(TransportCommand.togglePlayback());
     }
 
     public final Node widget() {
         return view.pane;
     }
 
-    private void executePlayback(final PlaybackTask task) {
-        executor.execute(() -> {
-            view.waiting();
-            if (connected == null) {
-                view.setError("No connected device");
-                return;
-            }
-            try {
-                task.run();
-            } catch (final MediaRequestException e) {
-                view.setError(errToString(e.error()));
-            } catch (final Exception e) {
-                view.setError(PLAYBACK_ERROR + e.getMessage());
+    /*
+     * sends the given request to the connected device without waiting, passing its result to the given consumer
+     * once the device has answered.
+     */
+    private <T> void execute(final Function<ConnectedDeviceController, CompletableFuture<T>> request,
+            final Consumer<T> onResult) {
+        view.waiting();
+        final ConnectedDeviceController device = connected;
+        if (device == null) {
+            view.setError("No connected device");
+            return;
+        }
+        request.apply(device).whenComplete((result, failure) -> {
+            if (failure != null) {
+                setError(failure);
+            } else {
+                onResult.accept(result);
             }
         });
     }
 
-    private void executeQueue(final QueueTask task) {
-        executor.execute(() -> {
-            view.waiting();
-            if (connected == null) {
-                view.setError("No connected device");
-                return;
-            }
-            try {
-                final QueueState q = task.run();
-                view.setQueue(q.tracks, q.currentTrack, q.unsynch);
-            } catch (final MediaRequestException e) {
-                view.setError(errToString(e.error()));
-            } catch (final Exception e) {
-                view.setError(PLAYBACK_ERROR + e.getMessage());
-            }
-        });
+    private void executeQueue(final Function<ConnectedDeviceController, CompletableFuture<QueueState>> request) {
+        execute(request, q -> view.setQueue(q.tracks, q.currentTrack, q.unsynch, q.pending));
     }
 
     private void internalRequestConnection(final String deviceId) {
-        executor.execute(() -> {
-            view.waiting();
-            if (connected != null) {
-                view.setError(connected.deviceName() + " already connected");
-                return;
-            }
-            final CastDeviceController controller = controllers.get(deviceId);
-            if (controller == null) {
-                view.deviceDisconnected(deviceId, "Unknown device: " + deviceId);
-                return;
-            }
+        view.waiting();
+        if (connected != null) {
+            view.setError(connected.deviceName() + " already connected");
+            return;
+        }
+        final CastDeviceController controller = controllers.get(deviceId);
+        if (controller == null) {
+            view.deviceDisconnected(deviceId, "Unknown device: " + deviceId);
+            return;
+        }
 
-            try {
-                controller.connect();
-                final MediaController mediaController =
-                        controller.launchApp(MediaController.APP_ID, MediaController::newInstance);
-                connected = new ConnectedDeviceController(controller, mediaController, urlResolver);
-                connected.addListener(this);
-                view.deviceConnected(deviceId);
-            } catch (final IOException | TimeoutException e) {
-                controller.disconnect();
-                connected = null;
-                view.deviceDisconnected(deviceId, e.getMessage());
-            }
+        try {
+            controller.connect();
+            final MediaController mediaController =
+                    controller.launchApp(MediaController.APP_ID, MediaController::newInstance);
+            final ConnectedDeviceController device =
+                    new ConnectedDeviceController(controller, mediaController, urlResolver);
+            device.addListener(this);
+            connected = device;
+            view.deviceConnected(deviceId);
+        } catch (final IOException | TimeoutException e) {
+            controller.disconnect();
+            connected = null;
+            view.deviceDisconnected(deviceId, e.getMessage());
+        }
+    }
 
+    /*
+     * sends the given command on the transport lane of the connected device, ahead of the queue changes not yet
+     * started; the view is updated once the device has answered.
+     */
+    private void send(final TransportCommand command) {
+        view.waiting();
+        final ConnectedDeviceController device = connected;
+        if (device == null) {
+            view.setError("No connected device");
+            return;
+        }
+        command.run(device).whenComplete((state, failure) -> {
+            if (failure != null) {
+                setError(failure);
+            } else if (state.isPresent() && state.get() == PlayerState.PAUSED) {
+                view.setPause();
+            } else if (state.isPresent()) {
+                view.setPlay();
+            }
         });
     }
 
+    /* shows the given failure of a request to the connected device. */
+    private void setError(final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof MediaRequestException) {
+            view.setError(errToString(((MediaRequestException) cause).error()));
+        } else if (cause instanceof TimeoutException) {
+            view.setError(PLAYBACK_ERROR + "no answer from the device");
+        } else {
+            view.setError(PLAYBACK_ERROR + cause.getMessage());
+        }
+    }
+
 }
@@ -46,6 +46,7 @@ import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Tooltip;
@@ -96,8 +97,12 @@ final class PlayerView {
 
     private final Button volume;
 
+    private final Label loading;
+
     private final Fader requesting;
 
+    private final Tooltip pendingQueue;
+
     PlayerView(final ActionHandler anActionHandler) {
         ah = anActionHandler;
         pane = new VBox();
@@ -153,6 +158,12 @@ final class PlayerView {
 
         pane.getChildren().add(controls);
 
+        loading = new Label();
+        loading.getStyleClass().add("peel-player-loading");
+        loading.setVisible(false);
+        loading.setManaged(false);
+        pane.getChildren().add(loading);
+
         queue = new VBox();
         queue.getStyleClass().add("peel-player-queue");
 
@@ -164,6 +175,7 @@ final class PlayerView {
         pane.getChildren().add(scrollPane);
 
         requesting = new Fader(connection);
+        pendingQueue = new Tooltip("waiting for the device to confirm the queue");
     }
 
     final void addDevice(final String deviceId, final Optional<String> deviceName) {
@@ -246,6 +258,16 @@ final class PlayerView {
         });
     }
 
+    /* the given number of the given total of tracks being queued have been sent to the device. */
+    final void setLoading(final int loaded, final int total) {
+        Platform.runLater(() -> {
+            final boolean done = loaded >= total;
+            loading.setText(done ? "" : "Queued " + loaded + " of " + total + " tracks");
+            loading.setVisible(!done);
+            loading.setManaged(!done);
+        });
+    }
+
     final void setPause() {
         Platform.runLater(() -> {
             requesting.stop();
@@ -260,9 +282,19 @@ final class PlayerView {
         });
     }
 
-    final void setQueue(final List<Track> tracks, final Optional<Track> current, final boolean unsynch) {
+    final void setQueue(final List<Track> tracks, final Optional<Track> current, final boolean unsynch,
+            final boolean pending) {
         Platform.runLater(() -> {
-            requesting.stop();
+            if (pending) {
+                /* still waiting for the device. */
+                requesting.start();
+                connection.setTooltip(pendingQueue);
+            } else {
+                requesting.stop();
+                if (connection.getTooltip() == pendingQueue) {
+                    connection.setTooltip(null);
+                }
+            }
             enableControls();
             queue.getChildren().clear();
             final Collection<QueueTrackView> views = new ArrayList<>();
@@ -310,6 +342,8 @@ final class PlayerView {
         disableControls();
         currentTrack.reset();
         queue.getChildren().clear();
+        loading.setVisible(false);
+        loading.setManaged(false);
     }
 
     private void updatePast(final Track current) {
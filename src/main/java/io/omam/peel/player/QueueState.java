@@ -43,10 +43,23 @@ final class QueueState {
 
     final boolean unsynch;
 
+    /* some tracks sent to the device are not in its queue yet: it is being read again. */
+    final boolean pending;
+
     QueueState(final List<Track> someTracks, final Optional<Track> aCurrentTrack, final boolean isUnsynch) {
+        this(someTracks, aCurrentTrack, isUnsynch, false);
+    }
+
+    private QueueState(final List<Track> someTracks, final Optional<Track> aCurrentTrack, final boolean isUnsynch,
+            final boolean isPending) {
         tracks = someTracks;
         currentTrack = aCurrentTrack;
         unsynch = isUnsynch;
+        pending = isPending;
+    }
+
+    final QueueState pending() {
+        return new QueueState(tracks, currentTrack, unsynch, true);
     }
 
 }
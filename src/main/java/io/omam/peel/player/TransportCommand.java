@@ -0,0 +1,130 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.player;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import io.omam.wire.media.MediaStatus.PlayerState;
+
+/*
+ * a transport control. Commands sent in a burst are merged into a single request to the device, each kind of
+ * command with its own rule.
+ */
+abstract class TransportCommand {
+
+    /* skips the given number of tracks: skips add up. */
+    private static final class Skip extends TransportCommand {
+
+        private final int offset;
+
+        Skip(final int anOffset) {
+            offset = anOffset;
+        }
+
+        @Override
+        final Optional<TransportCommand> merge(final TransportCommand next) {
+            if (next instanceof Skip) {
+                return Optional.of(new Skip(offset + ((Skip) next).offset));
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        final CompletableFuture<Optional<PlayerState>> run(final ConnectedDeviceController device) {
+            final CompletableFuture<Void> skipped;
+            if (offset == 1) {
+                skipped = device.nextAsync();
+            } else if (offset == -1) {
+                skipped = device.prevAsync();
+            } else if (offset != 0) {
+                skipped = device.jumpAsync(offset);
+            } else {
+                skipped = CompletableFuture.completedFuture(null);
+            }
+            return skipped.thenApply(v -> Optional.empty());
+        }
+
+    }
+
+    /* toggles playback the given number of times: toggles cancel each other out in pairs. */
+    private static final class Toggle extends TransportCommand {
+
+        private final int count;
+
+        Toggle(final int aCount) {
+            count = aCount;
+        }
+
+        @Override
+        final Optional<TransportCommand> merge(final TransportCommand next) {
+            if (next instanceof Toggle) {
+                return Optional.of(new Toggle(count + ((Toggle) next).count));
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        final CompletableFuture<Optional<PlayerState>> run(final ConnectedDeviceController device) {
+            if (count % 2 == 0) {
+                return CompletableFuture.completedFuture(Optional.of(device.playerState()));
+            }
+            return device.togglePlaybackAsync().thenApply(Optional::of);
+        }
+
+    }
+
+    TransportCommand() {
+        // package-private.
+    }
+
+    static TransportCommand next() {
+        return new Skip(1);
+    }
+
+    static TransportCommand previous() {
+        return new Skip(-1);
+    }
+
+    static TransportCommand togglePlayback() {
+        return new Toggle(1);
+    }
+
+    /* the command equivalent to this one followed by the given one, if any. */
+    abstract Optional<TransportCommand> merge(final TransportCommand next);
+
+    /*
+     * sends this command to the given device on the transport lane without waiting, completing with the player
+     * state if changed by it.
+     */
+    abstract CompletableFuture<Optional<PlayerState>> run(final ConnectedDeviceController device);
+
+}
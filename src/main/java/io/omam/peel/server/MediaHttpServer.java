@@ -39,8 +39,9 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
@@ -59,10 +60,13 @@ public final class MediaHttpServer implements MediaServer {
 
         private static final Decoder DECODER = new Decoder(StandardCharsets.UTF_8);
 
-        private final String root;
+        private final Path root;
 
-        Handler(final String aRoot) {
+        private final String namespace;
+
+        Handler(final Path aRoot, final String aNamespace) {
             root = aRoot;
+            namespace = aNamespace;
         }
 
         @Override
@@ -74,10 +78,13 @@ public final class MediaHttpServer implements MediaServer {
                     sendError(400, "Missing path", exchange);
                 } else {
                     final String decoded = DECODER.decodePath(rPath);
-                    if (decoded.isEmpty()) {
+                    final Path path = decoded.startsWith(namespace)
+                        ? root.resolve(decoded.substring(namespace.length())).normalize()
+                        : null;
+                    if (path == null || path.equals(root) || !path.startsWith(root)) {
+                        /* outside of this root. */
                         sendError(404, "Invalid file", exchange);
                     } else {
-                        final Path path = Paths.get(root, decoded);
                         final File file = path.toFile();
                         if (!file.exists() || file.isDirectory()) {
                             sendError(404, "File not found", exchange);
@@ -126,7 +133,8 @@ public final class MediaHttpServer implements MediaServer {
 
     private static final Logger LOGGER = Logger.getLogger(MediaHttpServer.class.getName());
 
-    private final Path root;
+    /* the roots, each served under /i/ where i is its index. */
+    private final List<Path> roots;
 
     private final HttpServer httpServer;
 
@@ -134,28 +142,54 @@ public final class MediaHttpServer implements MediaServer {
 
     private final int port;
 
-    private MediaHttpServer(final Path aRoot, final String anIp, final HttpServer aHttpServer) {
-        root = aRoot;
+    private MediaHttpServer(final List<Path> someRoots, final String anIp, final HttpServer aHttpServer) {
+        roots = someRoots;
         httpServer = aHttpServer;
         ip = anIp;
         port = httpServer.getAddress().getPort();
     }
 
     public static MediaHttpServer start(final Path root, final int port) throws IOException {
+        return start(List.of(root), port);
+    }
+
+    public static MediaHttpServer start(final List<Path> roots, final int port) throws IOException {
         final InetSocketAddress addr = new InetSocketAddress(port);
         final HttpServer httpServer = HttpServer.create(addr, 0);
-        httpServer.createContext("/", new Handler(root.toString())).setAuthenticator(null);
+        final List<Path> normalized = new ArrayList<>();
+        for (int i = 0; i < roots.size(); i++) {
+            final Path root = roots.get(i).toAbsolutePath().normalize();
+            final String namespace = namespace(i);
+            httpServer.createContext(namespace, new Handler(root, namespace)).setAuthenticator(null);
+            normalized.add(root);
+        }
         httpServer.setExecutor(Executors.newCachedThreadPool(new PeelThreadFactory("media-server")));
         httpServer.start();
         final String localIp = InetAddress.getLocalHost().getHostAddress();
         LOGGER.info(() -> " Server started:  " + addr);
-        return new MediaHttpServer(root, localIp, httpServer);
+        return new MediaHttpServer(normalized, localIp, httpServer);
+    }
+
+    private static String namespace(final int index) {
+        return "/" + index + "/";
     }
 
     @Override
     public final String resolveUrl(final Path localPath) {
-        final String encoded = ENCODER.encodePath(root.relativize(localPath).toString().replace('\\', '/'));
-        return "http://" + ip + ":" + port + "/" + encoded;
+        final Path path = localPath.toAbsolutePath().normalize();
+        /* the innermost root wins if roots are nested. */
+        int index = -1;
+        for (int i = 0; i < roots.size(); i++) {
+            if (path.startsWith(roots.get(i))
+                && (index == -1 || roots.get(i).getNameCount() > roots.get(index).getNameCount())) {
+                index = i;
+            }
+        }
+        if (index == -1) {
+            throw new IllegalArgumentException("[" + localPath + "] is not in the library");
+        }
+        final String relative = roots.get(index).relativize(path).toString().replace('\\', '/');
+        return "http://" + ip + ":" + port + namespace(index) + ENCODER.encodePath(relative);
     }
 
     @Override
@@ -35,5 +35,6 @@ import java.nio.file.Path;
 @FunctionalInterface
 public interface UrlResolver {
 
+    /* throws IllegalArgumentException if the given path is not served, e.g. not under a library root. */
     String resolveUrl(final Path localPath);
 }
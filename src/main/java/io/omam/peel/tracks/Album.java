@@ -30,7 +30,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.tracks;
 
+import java.text.CollationKey;
 import java.util.List;
+import java.util.function.Supplier;
 
 public final class Album {
 
@@ -38,11 +40,42 @@ public final class Album {
 
     private final String name;
 
-    private final List<Track> tracks;
+    private final String artistKey;
+
+    private final String nameKey;
+
+    private final CollationKey artistSortKey;
+
+    private final CollationKey nameSortKey;
+
+    private final Supplier<List<Track>> resolver;
+
+    private volatile List<Track> tracks;
 
     Album(final String anArtist, final String aName, final List<Track> someTracks) {
+        this(anArtist, aName, () -> someTracks);
+        tracks = someTracks;
+    }
+
+    Album(final String anArtist, final String aName, final Supplier<List<Track>> aResolver) {
         artist = anArtist;
         name = aName;
+        artistKey = Names.fold(anArtist);
+        nameKey = Names.fold(aName);
+        artistSortKey = Names.sortKey(anArtist);
+        nameSortKey = Names.sortKey(aName);
+        resolver = aResolver;
+        tracks = null;
+    }
+
+    private Album(final Album other, final List<Track> someTracks) {
+        artist = other.artist;
+        name = other.name;
+        artistKey = other.artistKey;
+        nameKey = other.nameKey;
+        artistSortKey = other.artistSortKey;
+        nameSortKey = other.nameSortKey;
+        resolver = () -> someTracks;
         tracks = someTracks;
     }
 
@@ -54,8 +87,44 @@ public final class Album {
         return name;
     }
 
+    public final boolean isResolved() {
+        return tracks != null;
+    }
+
     public final List<Track> tracks() {
-        return tracks;
+        /* resolved at most once: the album directory is listed on first call. */
+        List<Track> result = tracks;
+        if (result == null) {
+            synchronized (this) {
+                result = tracks;
+                if (result == null) {
+                    result = resolver.get();
+                    tracks = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    final String artistKey() {
+        return artistKey;
+    }
+
+    final CollationKey artistSortKey() {
+        return artistSortKey;
+    }
+
+    final String nameKey() {
+        return nameKey;
+    }
+
+    final CollationKey nameSortKey() {
+        return nameSortKey;
+    }
+
+    /* same album, keys are not recomputed. */
+    final Album withTracks(final List<Track> someTracks) {
+        return new Album(this, someTracks);
     }
 
 }
@@ -30,15 +30,23 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.tracks;
 
+import java.text.CollationKey;
+
 public final class Artist {
 
     private final String name;
 
     private final String firstChar;
 
+    private final String searchKey;
+
+    private final CollationKey sortKey;
+
     Artist(final String aName, final String aFirstChar) {
         name = aName;
         firstChar = aFirstChar;
+        searchKey = Names.fold(aName);
+        sortKey = Names.sortKey(aName);
     }
 
     public final String firstChar() {
@@ -49,4 +57,12 @@ public final class Artist {
         return name;
     }
 
+    final String searchKey() {
+        return searchKey;
+    }
+
+    final CollationKey sortKey() {
+        return sortKey;
+    }
+
 }
@@ -0,0 +1,453 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+ * compressed set of track ordinals: values are split by their 16 high bits into containers holding the 16 low
+ * bits, either as a sorted array when sparse or as a 65536 bits bitmap when dense. Immutable.
+ */
+public final class Bitmap {
+
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        /* this container as 1024 words, never to be modified by the caller. */
+        abstract long[] words();
+
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        final char[] values;
+
+        ArrayContainer(final char[] someValues) {
+            values = someValues;
+        }
+
+        @Override
+        final int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        final boolean contains(final char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        final void forEach(final int high, final IntConsumer action) {
+            for (final char low : values) {
+                action.accept(high | low);
+            }
+        }
+
+        @Override
+        final long[] words() {
+            final long[] words = new long[WORDS];
+            for (final char low : values) {
+                words[low >>> 6] |= 1L << low;
+            }
+            return words;
+        }
+
+    }
+
+    private static final class BitsContainer extends Container {
+
+        final long[] words;
+
+        final int cardinality;
+
+        BitsContainer(final long[] someWords, final int aCardinality) {
+            words = someWords;
+            cardinality = aCardinality;
+        }
+
+        @Override
+        final int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        final boolean contains(final char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        final void forEach(final int high, final IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        final long[] words() {
+            return words;
+        }
+
+    }
+
+    static final class Builder {
+
+        private int[] values;
+
+        private int size;
+
+        Builder() {
+            values = new int[4];
+            size = 0;
+        }
+
+        /* values must be added in increasing order. */
+        final void add(final int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        final Bitmap build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            final int n = (values[size - 1] >>> 16) - (values[0] >>> 16) + 1;
+            final char[] keys = new char[Math.min(n, size)];
+            final Container[] containers = new Container[keys.length];
+            int k = 0;
+            int from = 0;
+            while (from < size) {
+                final int high = values[from] >>> 16;
+                int to = from;
+                while (to < size && values[to] >>> 16 == high) {
+                    to++;
+                }
+                keys[k] = (char) high;
+                containers[k] = container(values, from, to);
+                k++;
+                from = to;
+            }
+            return new Bitmap(keys, containers, k);
+        }
+
+        private static Container container(final int[] values, final int from, final int to) {
+            final int cardinality = to - from;
+            if (cardinality > ARRAY_MAX) {
+                final long[] words = new long[WORDS];
+                for (int i = from; i < to; i++) {
+                    words[(values[i] & 0xFFFF) >>> 6] |= 1L << values[i];
+                }
+                return new BitsContainer(words, cardinality);
+            }
+            final char[] lows = new char[cardinality];
+            for (int i = from; i < to; i++) {
+                lows[i - from] = (char) values[i];
+            }
+            return new ArrayContainer(lows);
+        }
+
+    }
+
+    /* above this many values a container is stored as a bitmap: 4096 chars weigh as much as 1024 longs. */
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int WORDS = 1024;
+
+    private static final Bitmap EMPTY = new Bitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+
+    private final Container[] containers;
+
+    private final int size;
+
+    private final int cardinality;
+
+    private Bitmap(final char[] someKeys, final Container[] someContainers, final int aSize) {
+        keys = someKeys;
+        containers = someContainers;
+        size = aSize;
+        int c = 0;
+        for (int i = 0; i < aSize; i++) {
+            c += someContainers[i].cardinality();
+        }
+        cardinality = c;
+    }
+
+    public static Bitmap empty() {
+        return EMPTY;
+    }
+
+    public static Bitmap of(final int... values) {
+        final int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final Builder b = new Builder();
+        for (final int v : sorted) {
+            if (v < 0) {
+                throw new IllegalArgumentException("negative value: " + v);
+            }
+            b.add(v);
+        }
+        return b.build();
+    }
+
+    /* a container for the given words, null if empty. */
+    private static Container container(final long[] words, final int cardinality) {
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX) {
+            return new BitsContainer(words, cardinality);
+        }
+        final char[] values = new char[cardinality];
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                values[n++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(values);
+    }
+
+    private static Container and(final Container a, final Container b) {
+        if (a instanceof ArrayContainer) {
+            return filter(((ArrayContainer) a).values, b, true);
+        }
+        if (b instanceof ArrayContainer) {
+            return filter(((ArrayContainer) b).values, a, true);
+        }
+        final long[] x = a.words();
+        final long[] y = b.words();
+        final long[] words = new long[WORDS];
+        int cardinality = 0;
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = x[i] & y[i];
+            cardinality += Long.bitCount(words[i]);
+        }
+        return container(words, cardinality);
+    }
+
+    private static Container andNot(final Container a, final Container b) {
+        if (a instanceof ArrayContainer) {
+            return filter(((ArrayContainer) a).values, b, false);
+        }
+        final long[] words = a.words().clone();
+        int cardinality = a.cardinality();
+        if (b instanceof ArrayContainer) {
+            for (final char low : ((ArrayContainer) b).values) {
+                final long bit = 1L << low;
+                if ((words[low >>> 6] & bit) != 0) {
+                    words[low >>> 6] ^= bit;
+                    cardinality--;
+                }
+            }
+        } else {
+            final long[] y = b.words();
+            cardinality = 0;
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= ~y[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+        }
+        return container(words, cardinality);
+    }
+
+    /* values of the array that are (or are not) in the container. */
+    private static Container filter(final char[] values, final Container c, final boolean keep) {
+        final char[] result = new char[values.length];
+        int n = 0;
+        for (final char v : values) {
+            if (c.contains(v) == keep) {
+                result[n++] = v;
+            }
+        }
+        return n == 0 ? null : new ArrayContainer(n == values.length ? result : Arrays.copyOf(result, n));
+    }
+
+    private static Container or(final Container a, final Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer
+            && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+            final char[] x = ((ArrayContainer) a).values;
+            final char[] y = ((ArrayContainer) b).values;
+            final char[] merged = new char[x.length + y.length];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) {
+                    merged[n++] = x[i++];
+                } else if (x[i] > y[j]) {
+                    merged[n++] = y[j++];
+                } else {
+                    merged[n++] = x[i++];
+                    j++;
+                }
+            }
+            while (i < x.length) {
+                merged[n++] = x[i++];
+            }
+            while (j < y.length) {
+                merged[n++] = y[j++];
+            }
+            return new ArrayContainer(n == merged.length ? merged : Arrays.copyOf(merged, n));
+        }
+        final long[] words = new long[WORDS];
+        orInto(words, a);
+        orInto(words, b);
+        int cardinality = 0;
+        for (final long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        return container(words, cardinality);
+    }
+
+    private static void orInto(final long[] words, final Container c) {
+        if (c instanceof ArrayContainer) {
+            for (final char low : ((ArrayContainer) c).values) {
+                words[low >>> 6] |= 1L << low;
+            }
+        } else {
+            final long[] y = c.words();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] |= y[i];
+            }
+        }
+    }
+
+    public final Bitmap and(final Bitmap other) {
+        final int max = Math.min(size, other.size);
+        final char[] rkeys = new char[max];
+        final Container[] rcontainers = new Container[max];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                final Container c = and(containers[i], other.containers[j]);
+                if (c != null) {
+                    rkeys[n] = keys[i];
+                    rcontainers[n] = c;
+                    n++;
+                }
+                i++;
+                j++;
+            }
+        }
+        return n == 0 ? EMPTY : new Bitmap(rkeys, rcontainers, n);
+    }
+
+    public final Bitmap andNot(final Bitmap other) {
+        final char[] rkeys = new char[size];
+        final Container[] rcontainers = new Container[size];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            final Container c = j < other.size && other.keys[j] == keys[i]
+                ? andNot(containers[i], other.containers[j])
+                : containers[i];
+            if (c != null) {
+                rkeys[n] = keys[i];
+                rcontainers[n] = c;
+                n++;
+            }
+        }
+        return n == 0 ? EMPTY : new Bitmap(rkeys, rcontainers, n);
+    }
+
+    public final int cardinality() {
+        return cardinality;
+    }
+
+    public final boolean contains(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        final int i = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /* values in increasing order. */
+    public final void forEach(final IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    public final Bitmap or(final Bitmap other) {
+        final char[] rkeys = new char[size + other.size];
+        final Container[] rcontainers = new Container[size + other.size];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                rkeys[n] = keys[i];
+                rcontainers[n] = containers[i++];
+            } else if (i == size || keys[i] > other.keys[j]) {
+                rkeys[n] = other.keys[j];
+                rcontainers[n] = other.containers[j++];
+            } else {
+                rkeys[n] = keys[i];
+                rcontainers[n] = or(containers[i++], other.containers[j++]);
+            }
+            n++;
+        }
+        return n == 0 ? EMPTY : new Bitmap(rkeys, rcontainers, n);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/*
+ * For libraries on high-latency file systems (SMB, NFS...): directory listings are cached and only fetched again
+ * when the last modified time of the directory has changed. The number of requests in flight is bounded, and so is
+ * the cache: the listings used least recently are dropped first.
+ */
+final class CachedLibraryAccess extends LibraryAccess {
+
+    private static final class Listing {
+
+        final FileTime lastModified;
+
+        final List<DirectoryEntry> entries;
+
+        Listing(final FileTime aLastModified, final List<DirectoryEntry> someEntries) {
+            lastModified = aLastModified;
+            entries = someEntries;
+        }
+
+    }
+
+    /* entries of all the listings cached: the whole tree of a large library. */
+    private static final int MAX_CACHED_ENTRIES = 500_000;
+
+    private final LibraryAccess delegate;
+
+    private final Semaphore outstanding;
+
+    /* in access order; guarded by itself. */
+    private final LinkedHashMap<Path, Listing> listings;
+
+    /* entries of the listings cached; guarded by listings. */
+    private long cachedEntries;
+
+    CachedLibraryAccess(final LibraryAccess aDelegate, final int maxOutstandingRequests) {
+        delegate = aDelegate;
+        outstanding = new Semaphore(maxOutstandingRequests, true);
+        listings = new LinkedHashMap<>(16, 0.75f, true);
+        cachedEntries = 0;
+    }
+
+    @Override
+    final BasicFileAttributes attributes(final Path path) throws IOException {
+        acquire();
+        try {
+            return delegate.attributes(path);
+        } finally {
+            outstanding.release();
+        }
+    }
+
+    @Override
+    final List<DirectoryEntry> list(final Path dir) throws IOException {
+        final FileTime lastModified = attributes(dir).lastModifiedTime();
+        final Listing cached;
+        synchronized (listings) {
+            cached = listings.get(dir);
+        }
+        if (cached != null && cached.lastModified.equals(lastModified)) {
+            return cached.entries;
+        }
+        final List<DirectoryEntry> entries;
+        acquire();
+        try {
+            entries = List.copyOf(delegate.list(dir));
+        } finally {
+            outstanding.release();
+        }
+        cache(dir, new Listing(lastModified, entries));
+        return entries;
+    }
+
+    @Override
+    final int waiting() {
+        return outstanding.getQueueLength();
+    }
+
+    private void acquire() throws IOException {
+        try {
+            outstanding.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the file system", e);
+        }
+    }
+
+    /* caches the given listing, dropping those used least recently beyond MAX_CACHED_ENTRIES. */
+    private void cache(final Path dir, final Listing listing) {
+        synchronized (listings) {
+            final Listing replaced = listings.put(dir, listing);
+            cachedEntries += listing.entries.size() - (replaced == null ? 0 : replaced.entries.size());
+            final Iterator<Listing> eldest = listings.values().iterator();
+            while (cachedEntries > MAX_CACHED_ENTRIES && eldest.hasNext()) {
+                final Listing dropped = eldest.next();
+                if (dropped != listing) {
+                    cachedEntries -= dropped.entries.size();
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+}
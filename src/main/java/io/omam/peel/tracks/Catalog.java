@@ -0,0 +1,126 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * the library as a sequence of immutable versions: readers take the current snapshot and search it for as long as
+ * they like without any lock, writers build the next version from the current one and publish it with a single
+ * compare-and-set. A version no longer referenced by any reader is garbage collected.
+ */
+public final class Catalog {
+
+    /* one version of the catalog. */
+    public static final class Snapshot {
+
+        private final long version;
+
+        /* per root index, shared with the previous version for every root that did not change. */
+        private final Map<LibraryRoot, TrackIndex> roots;
+
+        private final TrackIndex index;
+
+        private final Suggestions suggestions;
+
+        private Snapshot(final long aVersion, final Map<LibraryRoot, TrackIndex> someRoots,
+                final TrackIndex anIndex, final Suggestions someSuggestions) {
+            version = aVersion;
+            roots = someRoots;
+            index = anIndex;
+            suggestions = someSuggestions;
+        }
+
+        /* merged index of all the roots of this version, facets and query indexes built. */
+        public final TrackIndex index() {
+            return index;
+        }
+
+        /* true if no root has been indexed in this version. */
+        public final boolean isEmpty() {
+            return roots.isEmpty();
+        }
+
+        public final Suggestions suggestions() {
+            return suggestions;
+        }
+
+        /* 0 for the empty catalog, then incremented by every update. */
+        public final long version() {
+            return version;
+        }
+
+        /*
+         * next version, with the given index replacing the one of the given root, if any: only the albums of that
+         * root are merged into those of this version. Facets, query index and suggestions span every album and are
+         * rebuilt.
+         */
+        private Snapshot with(final LibraryRoot root, final TrackIndex rootIndex) {
+            final Map<LibraryRoot, TrackIndex> next = new HashMap<>(roots);
+            final TrackIndex previous = next.put(root, rootIndex);
+            final TrackIndex merged =
+                    Tracks.merge(index, previous == null ? new TrackIndex(List.of()) : previous, rootIndex);
+            /* built before publication: readers never wait for them. */
+            Tracks.prepare(merged);
+            return new Snapshot(version + 1, Map.copyOf(next), merged, Tracks.suggestions(merged));
+        }
+
+    }
+
+    private final AtomicReference<Snapshot> current;
+
+    public Catalog() {
+        current = new AtomicReference<>(new Snapshot(0, Map.of(), new TrackIndex(List.of()), Suggestions.empty()));
+    }
+
+    /* the current version, consistent for as long as it is used. */
+    public final Snapshot current() {
+        return current.get();
+    }
+
+    /*
+     * publishes a new version with the given index of the given root, from any thread; returns the published
+     * version. Concurrent updates never block: the loser of the race rebuilds on top of the winner's version.
+     */
+    public final Snapshot put(final LibraryRoot root, final TrackIndex rootIndex) {
+        while (true) {
+            final Snapshot base = current.get();
+            final Snapshot next = base.with(root, rootIndex);
+            if (current.compareAndSet(base, next)) {
+                return next;
+            }
+        }
+    }
+
+}
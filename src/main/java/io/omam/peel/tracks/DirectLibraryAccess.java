@@ -0,0 +1,95 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+final class DirectLibraryAccess extends LibraryAccess {
+
+    private static final LinkOption[] NO_FOLLOW = { LinkOption.NOFOLLOW_LINKS };
+
+    private static final LinkOption[] FOLLOW = {};
+
+    private static final Logger LOGGER = Logger.getLogger(DirectLibraryAccess.class.getName());
+
+    private final LinkOption[] linkOptions;
+
+    DirectLibraryAccess(final boolean followLinks) {
+        linkOptions = followLinks ? FOLLOW : NO_FOLLOW;
+    }
+
+    @Override
+    final BasicFileAttributes attributes(final Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class, linkOptions);
+    }
+
+    /*
+     * attributes are read in the same pass as the listing: relative to the open directory where supported (Unix),
+     * without resolving the whole path of every entry again; on Windows the listing itself carries them.
+     */
+    @Override
+    final List<DirectoryEntry> list(final Path dir) throws IOException {
+        final List<DirectoryEntry> entries = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            final SecureDirectoryStream<Path> secure =
+                    stream instanceof SecureDirectoryStream ? (SecureDirectoryStream<Path>) stream : null;
+            for (final Path p : stream) {
+                try {
+                    /* all attributes at once, instead of one round trip per isDirectory, isHidden... */
+                    entries.add(new DirectoryEntry(p, secure == null ? attributes(p) : attributes(secure, p)));
+                } catch (final IOException e) {
+                    /* broken link, permission... */
+                    LOGGER.log(Level.FINE, e.getMessage(), e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private BasicFileAttributes attributes(final SecureDirectoryStream<Path> dir, final Path entry)
+            throws IOException {
+        return dir
+            .getFileAttributeView(entry.getFileName(), BasicFileAttributeView.class, linkOptions)
+            .readAttributes();
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+public enum Facet {
+
+    GENRE(t -> t.genre().orElse(null)),
+    DECADE(t -> t.year().isPresent() ? t.year().getAsInt() / 10 * 10 + "s" : null),
+    FORMAT(Track::format),
+    QUALITY(Facet::quality);
+
+    private static final Set<String> LOSSLESS = Set.of("FLAC", "WAV");
+
+    private final Function<Track, String> value;
+
+    Facet(final Function<Track, String> aValue) {
+        value = aValue;
+    }
+
+    private static String quality(final Track track) {
+        if (LOSSLESS.contains(track.format())) {
+            return "lossless";
+        }
+        if (track.bitrate().isEmpty()) {
+            return null;
+        }
+        final int kbps = track.bitrate().getAsInt();
+        if (kbps >= 256) {
+            return "high";
+        }
+        return kbps >= 128 ? "standard" : "low";
+    }
+
+    public final String display() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /* value of this facet for the given track, null if unknown. */
+    final String value(final Track track) {
+        return value.apply(track);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * selected and excluded values per facet: a track matches if, for every facet with selected values, it has any of
+ * them (OR), and has none of the excluded values of any facet (ANDNOT). Immutable.
+ */
+public final class FacetFilter {
+
+    private static final FacetFilter NONE =
+            new FacetFilter(new EnumMap<>(Facet.class), new EnumMap<>(Facet.class));
+
+    private final Map<Facet, Set<String>> selected;
+
+    private final Map<Facet, Set<String>> excluded;
+
+    private FacetFilter(final Map<Facet, Set<String>> someSelected, final Map<Facet, Set<String>> someExcluded) {
+        selected = someSelected;
+        excluded = someExcluded;
+    }
+
+    public static FacetFilter none() {
+        return NONE;
+    }
+
+    private static Map<Facet, Set<String>> with(final Map<Facet, Set<String>> values, final Facet facet,
+            final String value, final boolean add) {
+        final Map<Facet, Set<String>> result = new EnumMap<>(Facet.class);
+        result.putAll(values);
+        final Set<String> set = new HashSet<>(values.getOrDefault(facet, Collections.emptySet()));
+        if (add) {
+            set.add(value);
+        } else {
+            set.remove(value);
+        }
+        if (set.isEmpty()) {
+            result.remove(facet);
+        } else {
+            result.put(facet, Collections.unmodifiableSet(set));
+        }
+        return result;
+    }
+
+    public final FacetFilter exclude(final Facet facet, final String value) {
+        return new FacetFilter(with(selected, facet, value, false), with(excluded, facet, value, true));
+    }
+
+    public final Set<String> excluded(final Facet facet) {
+        return excluded.getOrDefault(facet, Collections.emptySet());
+    }
+
+    public final boolean isEmpty() {
+        return selected.isEmpty() && excluded.isEmpty();
+    }
+
+    public final FacetFilter reset(final Facet facet, final String value) {
+        return new FacetFilter(with(selected, facet, value, false), with(excluded, facet, value, false));
+    }
+
+    public final FacetFilter select(final Facet facet, final String value) {
+        return new FacetFilter(with(selected, facet, value, true), with(excluded, facet, value, false));
+    }
+
+    public final Set<String> selected(final Facet facet) {
+        return selected.getOrDefault(facet, Collections.emptySet());
+    }
+
+    /* this filter without the selected values of the given facet, used to count the values of that facet. */
+    final FacetFilter without(final Facet facet) {
+        if (!selected.containsKey(facet)) {
+            return this;
+        }
+        final Map<Facet, Set<String>> s = new EnumMap<>(Facet.class);
+        s.putAll(selected);
+        s.remove(facet);
+        return new FacetFilter(s, excluded);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * one bitmap of track ordinals per facet value, ordinals numbering the tracks of the index album after album.
+ */
+public final class Facets {
+
+    private final List<Album> albums;
+
+    /* ordinal of the first track of each album, followed by the number of tracks. */
+    private final int[] starts;
+
+    private final Bitmap all;
+
+    private final Map<Facet, Map<String, Bitmap>> bitmaps;
+
+    private Facets(final List<Album> someAlbums, final int[] someStarts, final Bitmap allTracks,
+            final Map<Facet, Map<String, Bitmap>> someBitmaps) {
+        albums = someAlbums;
+        starts = someStarts;
+        all = allTracks;
+        bitmaps = someBitmaps;
+    }
+
+    static Facets of(final List<Album> albums) {
+        final int[] starts = new int[albums.size() + 1];
+        final Bitmap.Builder all = new Bitmap.Builder();
+        final Map<Facet, Map<String, Bitmap.Builder>> builders = new EnumMap<>(Facet.class);
+        for (final Facet facet : Facet.values()) {
+            builders.put(facet, new HashMap<>());
+        }
+        int ordinal = 0;
+        for (int i = 0; i < albums.size(); i++) {
+            starts[i] = ordinal;
+            for (final Track track : albums.get(i).tracks()) {
+                all.add(ordinal);
+                for (final Facet facet : Facet.values()) {
+                    final String value = facet.value(track);
+                    if (value != null) {
+                        builders.get(facet).computeIfAbsent(value, v -> new Bitmap.Builder()).add(ordinal);
+                    }
+                }
+                ordinal++;
+            }
+        }
+        starts[albums.size()] = ordinal;
+        final Map<Facet, Map<String, Bitmap>> bitmaps = new EnumMap<>(Facet.class);
+        builders.forEach((facet, values) -> {
+            final Map<String, Bitmap> m = new HashMap<>();
+            values.forEach((value, b) -> m.put(value, b.build()));
+            bitmaps.put(facet, m);
+        });
+        return new Facets(albums, starts, all.build(), bitmaps);
+    }
+
+    public final Bitmap all() {
+        return all;
+    }
+
+    /*
+     * number of tracks matching the filter for each value of the given facet, ignoring the values selected for
+     * that facet so that they can be combined. Most frequent values first.
+     */
+    public final Map<String, Integer> counts(final Facet facet, final FacetFilter filter) {
+        final Bitmap within = select(filter.without(facet));
+        final List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        bitmaps.get(facet).forEach((value, b) -> {
+            final int count = b.and(within).cardinality();
+            if (count > 0) {
+                counts.add(Map.entry(value, count));
+            }
+        });
+        counts.sort(Map.Entry
+            .<String, Integer> comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        final Map<String, Integer> result = new LinkedHashMap<>();
+        counts.forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    public final Bitmap select(final FacetFilter filter) {
+        Bitmap result = all;
+        for (final Facet facet : Facet.values()) {
+            final Set<String> selected = filter.selected(facet);
+            if (!selected.isEmpty()) {
+                Bitmap any = Bitmap.empty();
+                for (final String value : selected) {
+                    any = any.or(tracks(facet, value));
+                }
+                result = result.and(any);
+            }
+            for (final String value : filter.excluded(facet)) {
+                result = result.andNot(tracks(facet, value));
+            }
+        }
+        return result;
+    }
+
+    public final Bitmap tracks(final Facet facet, final String value) {
+        return bitmaps.get(facet).getOrDefault(value, Bitmap.empty());
+    }
+
+    public final Set<String> values(final Facet facet) {
+        return Collections.unmodifiableSet(bitmaps.get(facet).keySet());
+    }
+
+    /* albums with only their selected tracks, albums without any dropped. */
+    final List<Album> albums(final Bitmap selection) {
+        final List<Album> result = new ArrayList<>();
+        final List<Track> tracks = new ArrayList<>();
+        final int[] album = { 0 };
+        selection.forEach(ordinal -> {
+            if (ordinal >= starts[album[0] + 1]) {
+                if (!tracks.isEmpty()) {
+                    result.add(albums.get(album[0]).withTracks(new ArrayList<>(tracks)));
+                    tracks.clear();
+                }
+                while (ordinal >= starts[album[0] + 1]) {
+                    album[0]++;
+                }
+            }
+            tracks.add(albums.get(album[0]).tracks().get(ordinal - starts[album[0]]));
+        });
+        if (!tracks.isEmpty()) {
+            result.add(albums.get(album[0]).withTracks(new ArrayList<>(tracks)));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/*
+ * Stand-in for a remote file system: adds a fixed latency to every request. Allows to reproduce NAS behaviour
+ * with a local library.
+ */
+final class LatencyLibraryAccess extends LibraryAccess {
+
+    private final LibraryAccess delegate;
+
+    private final long latency;
+
+    LatencyLibraryAccess(final LibraryAccess aDelegate, final long aLatency) {
+        delegate = aDelegate;
+        latency = aLatency;
+    }
+
+    @Override
+    final BasicFileAttributes attributes(final Path path) throws IOException {
+        roundTrip();
+        return delegate.attributes(path);
+    }
+
+    @Override
+    final List<DirectoryEntry> list(final Path dir) throws IOException {
+        /* one round trip to open the directory, one per entry to read its attributes. */
+        roundTrip();
+        final List<DirectoryEntry> entries = delegate.list(dir);
+        for (int i = 0; i < entries.size(); i++) {
+            roundTrip();
+        }
+        return entries;
+    }
+
+    private void roundTrip() throws IOException {
+        try {
+            Thread.sleep(latency);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/*
+ * a directory holding part of the library, scanned with its own settings: several roots make one library.
+ */
+public final class LibraryRoot {
+
+    private final Path path;
+
+    private final ScanSettings settings;
+
+    private final LibraryAccess access;
+
+    private final ScanPriority priority;
+
+    private final Path checkpoint;
+
+    private final Path ids;
+
+    private final ScanStatistics statistics;
+
+    public LibraryRoot(final Path aPath, final ScanSettings someSettings) {
+        this(aPath, someSettings, null);
+    }
+
+    /*
+     * checkpoints: directory where the progress of full scans is saved, so that an interrupted scan resumes where
+     * it stopped, and where the identities of its tracks are saved; null to always scan and hash from zero.
+     */
+    public LibraryRoot(final Path aPath, final ScanSettings someSettings, final Path checkpoints) {
+        path = aPath;
+        settings = someSettings;
+        access = LibraryAccess.of(someSettings);
+        priority = new ScanPriority();
+        statistics = new ScanStatistics();
+        checkpoint = checkpoints == null ? null : checkpoints.resolve(checkpointName(aPath, ".scan"));
+        ids = checkpoints == null ? null : checkpoints.resolve(checkpointName(aPath, ".ids"));
+    }
+
+    private static String checkpointName(final Path root, final String extension) {
+        final String absolute = root.toAbsolutePath().normalize().toString();
+        final String name = root.getFileName() == null ? "root" : root.getFileName().toString();
+        return name.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + Integer.toHexString(absolute.hashCode()) + extension;
+    }
+
+    public final LibraryAccess access() {
+        return access;
+    }
+
+    /* file where the progress of full scans of this root is saved, if any. */
+    public final Optional<Path> checkpoint() {
+        return Optional.ofNullable(checkpoint);
+    }
+
+    /* file where the identities of the tracks of this root are saved, if any. */
+    public final Optional<Path> ids() {
+        return Optional.ofNullable(ids);
+    }
+
+    public final Path path() {
+        return path;
+    }
+
+    /* order in which pending directories of this root are scanned. */
+    public final ScanPriority priority() {
+        return priority;
+    }
+
+    public final ScanSettings settings() {
+        return settings;
+    }
+
+    /* counters of the full scan of this root, live while it runs. */
+    public final ScanStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public final String toString() {
+        return path.toString();
+    }
+
+}
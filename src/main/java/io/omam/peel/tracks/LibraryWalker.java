@@ -0,0 +1,457 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import io.omam.peel.core.PeelThreadFactory;
+
+final class LibraryWalker {
+
+    /*
+     * a pending directory: the most looked at first, then in submission order - i.e. breadth first within a
+     * priority.
+     */
+    private static final class DirectoryTask implements Runnable, Comparable<DirectoryTask> {
+
+        /* null for the re-ordering of the pending directories, which goes ahead of all of them. */
+        private final Path dir;
+
+        private final long sequence;
+
+        private final Runnable task;
+
+        private volatile int rank;
+
+        DirectoryTask(final Path aDir, final int aRank, final long aSequence, final Runnable aTask) {
+            dir = aDir;
+            rank = aRank;
+            sequence = aSequence;
+            task = aTask;
+        }
+
+        @Override
+        public final int compareTo(final DirectoryTask other) {
+            final int r = Integer.compare(other.rank, rank);
+            return r != 0 ? r : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public final void run() {
+            task.run();
+        }
+
+    }
+
+    /* state of one walk. */
+    private static final class Walk {
+
+        private final Path root;
+
+        private final ScanPriority priority;
+
+        private final ScanCheckpoint checkpoint;
+
+        private final Consumer<Album> consumer;
+
+        private final ThreadPoolExecutor pool;
+
+        private final PriorityBlockingQueue<Runnable> queue;
+
+        /* directories submitted and not yet walked, plus one for the walk itself: no bound unlike a Phaser. */
+        private final AtomicLong pending;
+
+        /* released when no directory is pending anymore. */
+        private final CountDownLatch done;
+
+        private final Set<Object> visited;
+
+        private final AtomicLong sequence;
+
+        /* true if a re-ordering is pending: a burst of priority changes re-orders pending directories once. */
+        private final AtomicBoolean reordering;
+
+        /* true if some directory could not be listed: the walk is then incomplete. */
+        private volatile boolean failed;
+
+        Walk(final Path aRoot, final ScanPriority aPriority, final ScanCheckpoint aCheckpoint,
+                final Consumer<Album> aConsumer, final int parallelism) {
+            root = aRoot;
+            priority = aPriority;
+            checkpoint = aCheckpoint;
+            consumer = aConsumer;
+            queue = new PriorityBlockingQueue<>();
+            pool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, queue,
+                                          new PeelThreadFactory("library-walker", Thread.MIN_PRIORITY));
+            pending = new AtomicLong(1);
+            done = new CountDownLatch(1);
+            visited = ConcurrentHashMap.newKeySet();
+            sequence = new AtomicLong();
+            reordering = new AtomicBoolean();
+            failed = false;
+        }
+
+        /* re-orders every pending directory. */
+        final void reorder() {
+            final List<Runnable> tasks = new ArrayList<>();
+            queue.drainTo(tasks);
+            for (final Runnable t : tasks) {
+                final DirectoryTask d = (DirectoryTask) t;
+                if (d.dir != null) {
+                    d.rank = rank(d.dir);
+                }
+                queue.add(d);
+            }
+        }
+
+        /*
+         * priorities changed, from any thread - e.g. the UI one: re-orders pending directories on the next walker
+         * thread available, before it takes the next directory.
+         */
+        final void reorderLater() {
+            if (!reordering.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pool.execute(new DirectoryTask(null, Integer.MAX_VALUE, sequence.getAndIncrement(), () -> {
+                    reordering.set(false);
+                    reorder();
+                }));
+            } catch (final RejectedExecutionException e) {
+                /* walk over. */
+            }
+        }
+
+        final int rank(final Path dir) {
+            return priority.of(root.relativize(dir));
+        }
+
+        /* one pending directory less: the last one ends the walk. */
+        final void arrive() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        final void submit(final Path dir, final Runnable task) {
+            pending.incrementAndGet();
+            try {
+                pool.execute(new DirectoryTask(dir, rank(dir), sequence.getAndIncrement(), () -> {
+                    try {
+                        task.run();
+                    } finally {
+                        arrive();
+                    }
+                }));
+            } catch (final RejectedExecutionException e) {
+                /* walk cancelled: the directory is not walked, the walk is incomplete. */
+                failed = true;
+                arrive();
+            }
+        }
+
+    }
+
+    private static final Comparator<? super Track> TRACK_COMPARATOR = Comparator.comparing(Track::name);
+
+    /* CD1, CD 2, Disc 1, disk-2, Disc 3 - Bonus... */
+    private static final Pattern DISC = Pattern.compile("^(cd|dis[ck])[\\s_-]*\\d+.*$", Pattern.CASE_INSENSITIVE);
+
+    private static final Logger LOGGER = Logger.getLogger(LibraryWalker.class.getName());
+
+    private final Set<String> supportedFormats;
+
+    private final ScanSettings settings;
+
+    private final LibraryAccess access;
+
+    private final ScanStatistics statistics;
+
+    LibraryWalker(final Set<String> someSupportedFormats, final ScanSettings someSettings,
+            final LibraryAccess anAccess) {
+        this(someSupportedFormats, someSettings, anAccess, new ScanStatistics());
+    }
+
+    LibraryWalker(final Set<String> someSupportedFormats, final ScanSettings someSettings,
+            final LibraryAccess anAccess, final ScanStatistics someStatistics) {
+        supportedFormats = someSupportedFormats;
+        settings = someSettings;
+        access = anAccess;
+        statistics = someStatistics;
+    }
+
+    private static String fileName(final Path p) {
+        return p.getFileName().toString();
+    }
+
+    private static List<DirectoryEntry> discs(final List<DirectoryEntry> entries) {
+        return entries
+            .stream()
+            .filter(e -> e.attributes.isDirectory() && isDisc(e.path))
+            .sorted(Comparator.comparing(e -> fileName(e.path)))
+            .collect(Collectors.toList());
+    }
+
+    private static boolean isDisc(final Path dir) {
+        return DISC.matcher(fileName(dir)).matches();
+    }
+
+    private static String trackName(final Path track) {
+        return fileName(track).replaceFirst("[.][^.]+$", "");
+    }
+
+    final List<Track> albumTracks(final String artistName, final String albumName, final Path album) {
+        final List<DirectoryEntry> entries = list(album);
+        final List<Track> tracks = tracks(artistName, albumName, entries, false);
+        discs(entries).forEach(d -> tracks.addAll(tracks(artistName, albumName, list(d.path), false)));
+        return tracks;
+    }
+
+    /*
+     * walks the whole tree under root, calling consumer - from any walker thread - with every directory that
+     * contains tracks. Returns once the walk is over or the calling thread is interrupted.
+     */
+    final void walk(final Path root, final Consumer<Album> consumer) throws InterruptedException {
+        walk(root, new ScanPriority(), ScanCheckpoint.none(), consumer);
+    }
+
+    /*
+     * same as above, pending directories being scanned in the given priority order, resuming from and saving
+     * progress to the given checkpoint.
+     */
+    final void walk(final Path root, final ScanPriority priority, final ScanCheckpoint checkpoint,
+            final Consumer<Album> consumer) throws InterruptedException {
+        final Walk walk = new Walk(root, priority, checkpoint, consumer, settings.parallelism());
+        statistics.started(walk.queue::size, access::waiting);
+        final Runnable reorder = walk::reorderLater;
+        priority.addListener(reorder);
+        boolean complete = false;
+        try {
+            final BasicFileAttributes rootAttributes = access.attributes(root);
+            visit(root, rootAttributes, walk.visited);
+            submit(walk, root, () -> walk(walk, root, rootAttributes, 0));
+            walk.arrive();
+            walk.done.await();
+            complete = !walk.failed;
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        } finally {
+            priority.removeListener(reorder);
+            walk.pool.shutdownNow();
+            statistics.finished();
+            if (complete) {
+                checkpoint.complete();
+            } else {
+                checkpoint.save();
+            }
+        }
+    }
+
+    private boolean isFormatSupported(final DirectoryEntry entry) {
+        if (!entry.attributes.isRegularFile()) {
+            return false;
+        }
+        final String trackFileName = fileName(entry.path);
+        final int dot = trackFileName.lastIndexOf('.');
+        if (dot == -1) {
+            return false;
+        }
+        return supportedFormats.contains(trackFileName.substring(dot + 1).toUpperCase());
+    }
+
+    /* true if neither the directory nor its discs have been modified since the given entry was recorded. */
+    private boolean isUnchanged(final Path dir, final BasicFileAttributes attributes,
+            final ScanCheckpoint.Entry entry) {
+        for (final Map.Entry<Path, Long> stamp : entry.stamps.entrySet()) {
+            try {
+                final Path p = stamp.getKey();
+                final BasicFileAttributes a = p.equals(dir) ? attributes : access.attributes(p);
+                if (a.lastModifiedTime().toMillis() != stamp.getValue()) {
+                    return false;
+                }
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<DirectoryEntry> list(final Path dir) {
+        try {
+            return access.list(dir);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /* the given directory was scanned by an interrupted walk and has not changed since. */
+    private void resume(final Walk walk, final Path dir, final int depth, final ScanCheckpoint.Entry entry) {
+        for (final Path subdirectory : entry.subdirectories) {
+            if (depth >= settings.maxDepth()) {
+                break;
+            }
+            try {
+                final BasicFileAttributes a = access.attributes(subdirectory);
+                if (a.isDirectory() && visit(subdirectory, a, walk.visited)) {
+                    submit(walk, subdirectory, () -> walk(walk, subdirectory, a, depth + 1));
+                }
+            } catch (final IOException e) {
+                /* removed since. */
+            }
+        }
+        if (entry.album != null) {
+            walk.consumer.accept(entry.album);
+        }
+        statistics.scanned(entry.album == null ? 0 : entry.album.tracks().size(), true);
+        walk.checkpoint.record(dir, entry);
+        walk.checkpoint.saveIfDue();
+    }
+
+    private void submit(final Walk walk, final Path dir, final Runnable task) {
+        statistics.discovered();
+        walk.submit(dir, task);
+    }
+
+    private List<Track> tracks(final String artistName, final String albumName, final List<DirectoryEntry> entries,
+            final boolean readTags) {
+        final List<Track> tracks = new ArrayList<>();
+        for (final DirectoryEntry e : entries) {
+            if (isFormatSupported(e)) {
+                final String name = trackName(e.path);
+                final Tags tags = readTags ? Tags.read(e.path, statistics.tagBytes()) : Tags.none();
+                final long size = e.attributes.size();
+                final long modified = e.attributes.lastModifiedTime().toMillis();
+                tracks.add(new Track(artistName, albumName, name, e.path, tags, size, modified));
+            }
+        }
+        tracks.sort(TRACK_COMPARATOR);
+        return tracks;
+    }
+
+    /* true if the directory has not been visited yet: guards against symbolic link loops. */
+    private boolean visit(final Path dir, final BasicFileAttributes attributes, final Set<Object> visited) {
+        Object key = attributes.fileKey();
+        if (key == null) {
+            try {
+                key = dir.toRealPath();
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+        return visited.add(key);
+    }
+
+    private void walk(final Walk walk, final Path dir, final BasicFileAttributes attributes, final int depth) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        final ScanCheckpoint.Entry scanned = walk.checkpoint.scanned(dir);
+        if (scanned != null && isUnchanged(dir, attributes, scanned)) {
+            resume(walk, dir, depth, scanned);
+            return;
+        }
+        final List<DirectoryEntry> entries;
+        try {
+            entries = access.list(dir);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            walk.failed = true;
+            statistics.error();
+            return;
+        }
+
+        /* root/track, root/artist/track, root/[...]/artist/album/track. */
+        final String albumName = dir.getFileName() == null ? dir.toString() : fileName(dir);
+        final Path parent = dir.getParent();
+        final String artistName = depth < 2 || parent == null ? albumName : fileName(parent);
+
+        final List<Track> tracks = tracks(artistName, albumName, entries, true);
+        final List<Path> subdirectories = new ArrayList<>();
+        for (final DirectoryEntry e : entries) {
+            if (e.attributes.isDirectory() && !isDisc(e.path) && depth < settings.maxDepth()) {
+                subdirectories.add(e.path);
+                if (visit(e.path, e.attributes, walk.visited)) {
+                    submit(walk, e.path, () -> walk(walk, e.path, e.attributes, depth + 1));
+                }
+            }
+        }
+        /* multi-disc album: fold into the parent album. */
+        final Map<Path, Long> stamps = new LinkedHashMap<>();
+        stamps.put(dir, attributes.lastModifiedTime().toMillis());
+        boolean listed = true;
+        for (final DirectoryEntry d : discs(entries)) {
+            if (visit(d.path, d.attributes, walk.visited)) {
+                stamps.put(d.path, d.attributes.lastModifiedTime().toMillis());
+                try {
+                    tracks.addAll(tracks(artistName, albumName, access.list(d.path), true));
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, e.getMessage(), e);
+                    walk.failed = true;
+                    statistics.error();
+                    listed = false;
+                }
+            }
+        }
+        final Album album = tracks.isEmpty() ? null : new Album(artistName, albumName, tracks);
+        if (album != null) {
+            walk.consumer.accept(album);
+        }
+        statistics.scanned(tracks.size(), false);
+        if (listed) {
+            walk.checkpoint.record(dir, new ScanCheckpoint.Entry(stamps, subdirectories, album));
+            walk.checkpoint.saveIfDue();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+final class Names {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final String ARTICLE = "the ";
+
+    /* letters that have no decomposition. */
+    private static final String[][] LIGATURES = { { "\u00f8", "o" }, { "\u00e6", "ae" }, { "\u0153", "oe" },
+            { "\u00df", "ss" }, { "\u0142", "l" }, { "\u0111", "d" }, { "\u00fe", "th" } };
+
+    private static final Collator COLLATOR;
+
+    static {
+        COLLATOR = Collator.getInstance(Locale.ROOT);
+        COLLATOR.setStrength(Collator.SECONDARY);
+        COLLATOR.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+    }
+
+    private Names() {
+        // empty.
+    }
+
+    /* NFKD, diacritics stripped, lower case and single spaces: "Sigur R\u00f3s" -> "sigur ros". */
+    static String fold(final String name) {
+        final String decomposed = Normalizer.normalize(name, Normalizer.Form.NFKD);
+        String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        for (final String[] ligature : LIGATURES) {
+            if (folded.contains(ligature[0])) {
+                folded = folded.replace(ligature[0], ligature[1]);
+            }
+        }
+        return SPACES.matcher(folded).replaceAll(" ").trim();
+    }
+
+    /* collation key ignoring any leading article: "The Beatles" sorts with "Beatles". */
+    static CollationKey sortKey(final String name) {
+        final String sortName = withoutArticle(name);
+        synchronized (COLLATOR) {
+            return COLLATOR.getCollationKey(sortName);
+        }
+    }
+
+    static String withoutArticle(final String name) {
+        if (name.length() > ARTICLE.length() && name.regionMatches(true, 0, ARTICLE, 0, ARTICLE.length())) {
+            return name.substring(ARTICLE.length());
+        }
+        return name;
+    }
+
+}
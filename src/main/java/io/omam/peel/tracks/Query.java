@@ -0,0 +1,609 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+ * a structured library query, such as: artist:radiohead year>=2000 format:flac "kid a".
+ *
+ * Clauses are ANDed unless separated by OR, can be negated with a leading - and grouped with parentheses. A clause
+ * is either a word or a quoted phrase matched against artist, album and track names, or a field and a value:
+ * artist, album and title (or track) match names; genre, decade, format and quality match facet values; year and
+ * bitrate accept :n, :n..m, =n, >n, >=n, <n and <=n.
+ *
+ * Parsing is lenient: anything that does not look like a clause is searched for as text.
+ */
+public final class Query {
+
+    /* a node of the query syntax tree, evaluated against a set of candidate track ordinals. */
+    abstract static class Node {
+
+        /* estimated number of matching tracks, used to evaluate the most selective clauses first. */
+        abstract int estimate(QueryIndex index);
+
+        /* the given candidates that match this node. */
+        abstract Bitmap evaluate(QueryIndex index, Bitmap candidates);
+
+        abstract boolean matches(QueryIndex index, int ordinal);
+
+        /* the given candidates that match this node, tested one by one. */
+        final Bitmap verify(final QueryIndex index, final Bitmap candidates) {
+            final Bitmap.Builder b = new Bitmap.Builder();
+            candidates.forEach(o -> {
+                if (matches(index, o)) {
+                    b.add(o);
+                }
+            });
+            return b.build();
+        }
+
+    }
+
+    private static final class And extends Node {
+
+        private final List<Node> nodes;
+
+        And(final List<Node> someNodes) {
+            nodes = someNodes;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            return nodes.stream().mapToInt(n -> n.estimate(index)).min().orElse(index.size());
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            /* most selective first: every following clause only looks at what is left. */
+            final List<Node> plan = new ArrayList<>(nodes);
+            plan.sort(Comparator.comparingInt(n -> n.estimate(index)));
+            Bitmap result = candidates;
+            for (final Node n : plan) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result = n.evaluate(index, result);
+            }
+            return result;
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            return nodes.stream().allMatch(n -> n.matches(index, ordinal));
+        }
+
+        @Override
+        public final String toString() {
+            return nodes.stream().map(Node::toString).collect(Collectors.joining(" AND ", "(", ")"));
+        }
+
+    }
+
+    private static final class FacetValue extends Node {
+
+        private final Facet facet;
+
+        private final String value;
+
+        FacetValue(final Facet aFacet, final String aValue) {
+            facet = aFacet;
+            value = aValue;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            return tracks(index).cardinality();
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            return candidates.and(tracks(index));
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            final String v = facet.value(index.track(ordinal));
+            return v != null && Names.fold(v).contains(value);
+        }
+
+        @Override
+        public final String toString() {
+            return facet.display() + ":" + value;
+        }
+
+        /* union of the bitmaps of every value containing the queried one: format:mp matches MP3. */
+        private Bitmap tracks(final QueryIndex index) {
+            final Facets facets = index.facets();
+            Bitmap result = Bitmap.empty();
+            for (final String v : facets.values(facet)) {
+                if (Names.fold(v).contains(value)) {
+                    result = result.or(facets.tracks(facet, v));
+                }
+            }
+            return result;
+        }
+
+    }
+
+    private static final class Not extends Node {
+
+        private final Node node;
+
+        Not(final Node aNode) {
+            node = aNode;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            return index.size() - node.estimate(index);
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            return candidates.andNot(node.evaluate(index, candidates));
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            return !node.matches(index, ordinal);
+        }
+
+        @Override
+        public final String toString() {
+            return "NOT " + node;
+        }
+
+    }
+
+    private static final class Or extends Node {
+
+        private final List<Node> nodes;
+
+        Or(final List<Node> someNodes) {
+            nodes = someNodes;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            final long sum = nodes.stream().mapToLong(n -> n.estimate(index)).sum();
+            return (int) Math.min(sum, index.size());
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            Bitmap result = Bitmap.empty();
+            Bitmap left = candidates;
+            for (final Node n : nodes) {
+                final Bitmap matching = n.evaluate(index, left);
+                result = result.or(matching);
+                left = left.andNot(matching);
+            }
+            return result;
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            return nodes.stream().anyMatch(n -> n.matches(index, ordinal));
+        }
+
+        @Override
+        public final String toString() {
+            return nodes.stream().map(Node::toString).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+
+    }
+
+    private static final class Parser {
+
+        private final String text;
+
+        private int pos;
+
+        private boolean structured;
+
+        Parser(final String aText) {
+            text = aText;
+            pos = 0;
+            structured = false;
+        }
+
+        final Node parse() {
+            final List<Node> nodes = new ArrayList<>();
+            skipSpaces();
+            while (pos < text.length()) {
+                if (text.charAt(pos) == ')') {
+                    /* unbalanced: ignored. */
+                    pos++;
+                } else {
+                    final Node n = or();
+                    if (n != null) {
+                        nodes.add(n);
+                    }
+                }
+                skipSpaces();
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new And(nodes);
+        }
+
+        private Node and() {
+            final List<Node> nodes = new ArrayList<>();
+            skipSpaces();
+            while (pos < text.length() && text.charAt(pos) != ')' && !atOr()) {
+                final Node n = unary();
+                if (n != null) {
+                    nodes.add(n);
+                }
+                skipSpaces();
+            }
+            if (nodes.isEmpty()) {
+                return null;
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new And(nodes);
+        }
+
+        private boolean atOr() {
+            return text.startsWith("OR", pos)
+                && (pos + 2 == text.length() || Character.isWhitespace(text.charAt(pos + 2)));
+        }
+
+        private Node clause() {
+            final StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            while (pos < text.length()) {
+                final char c = text.charAt(pos);
+                if (c == '"') {
+                    quoted = true;
+                    final int end = text.indexOf('"', pos + 1);
+                    final int to = end == -1 ? text.length() : end;
+                    sb.append(text, pos + 1, to);
+                    pos = Math.min(to + 1, text.length());
+                } else if (Character.isWhitespace(c) || c == '(' || c == ')') {
+                    break;
+                } else {
+                    sb.append(c);
+                    pos++;
+                }
+            }
+            final String token = sb.toString();
+            if (quoted) {
+                structured = true;
+            }
+            final Matcher m = FIELD.matcher(token);
+            if (m.matches()) {
+                final Node n = field(m.group(1).toLowerCase(Locale.ROOT), m.group(2), m.group(3));
+                if (n != null) {
+                    structured = true;
+                    return n;
+                }
+            }
+            final String folded = Names.fold(token);
+            return folded.isEmpty() ? null : new Text(TextField.ANY, folded);
+        }
+
+        private Node or() {
+            final List<Node> nodes = new ArrayList<>();
+            final Node first = and();
+            if (first != null) {
+                nodes.add(first);
+            }
+            while (atOr()) {
+                structured = true;
+                pos += 2;
+                final Node n = and();
+                if (n != null) {
+                    nodes.add(n);
+                }
+            }
+            if (nodes.isEmpty()) {
+                return null;
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Or(nodes);
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private Node unary() {
+            final char c = text.charAt(pos);
+            if (c == '-' && pos + 1 < text.length() && !Character.isWhitespace(text.charAt(pos + 1))) {
+                structured = true;
+                pos++;
+                final Node n = unary();
+                return n == null ? null : new Not(n);
+            }
+            if (c == '(') {
+                structured = true;
+                pos++;
+                final Node n = or();
+                skipSpaces();
+                if (pos < text.length() && text.charAt(pos) == ')') {
+                    pos++;
+                }
+                return n;
+            }
+            return clause();
+        }
+
+    }
+
+    private static final class Range extends Node {
+
+        private final RangeField field;
+
+        private final int min;
+
+        private final int max;
+
+        Range(final RangeField aField, final int aMin, final int aMax) {
+            field = aField;
+            min = aMin;
+            max = aMax;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            return field.range.apply(index).count(min, max);
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            /* few candidates left: cheaper to check them than to collect the whole range. */
+            if (candidates.cardinality() < estimate(index)) {
+                return verify(index, candidates);
+            }
+            return candidates.and(field.range.apply(index).select(min, max));
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            final OptionalInt v = field.value.apply(index.track(ordinal));
+            return v.isPresent() && v.getAsInt() >= min && v.getAsInt() <= max;
+        }
+
+        @Override
+        public final String toString() {
+            return field.name().toLowerCase(Locale.ROOT) + ":" + min + ".." + max;
+        }
+
+    }
+
+    private enum RangeField {
+
+        YEAR(QueryIndex::years, Track::year),
+        BITRATE(QueryIndex::bitrates, Track::bitrate);
+
+        final Function<QueryIndex, QueryIndex.Range> range;
+
+        final Function<Track, OptionalInt> value;
+
+        RangeField(final Function<QueryIndex, QueryIndex.Range> aRange,
+                final Function<Track, OptionalInt> aValue) {
+            range = aRange;
+            value = aValue;
+        }
+
+    }
+
+    private static final class Text extends Node {
+
+        private final TextField field;
+
+        private final String value;
+
+        Text(final TextField aField, final String aValue) {
+            field = aField;
+            value = aValue;
+        }
+
+        @Override
+        final int estimate(final QueryIndex index) {
+            final long sum = field.fields.stream().mapToLong(f -> index.gramsEstimate(f, value)).sum();
+            return (int) Math.min(sum, index.size());
+        }
+
+        @Override
+        final Bitmap evaluate(final QueryIndex index, final Bitmap candidates) {
+            /* trigrams are only worth intersecting if they narrow down the candidates. */
+            if (candidates.cardinality() <= estimate(index)) {
+                return verify(index, candidates);
+            }
+            Bitmap grams = Bitmap.empty();
+            for (final QueryIndex.Field f : field.fields) {
+                final Bitmap b = index.grams(f, value);
+                if (b == null) {
+                    return verify(index, candidates);
+                }
+                grams = grams.or(b);
+            }
+            /* trigrams may be found in any order: matches still need to be checked. */
+            return verify(index, candidates.and(grams));
+        }
+
+        @Override
+        final boolean matches(final QueryIndex index, final int ordinal) {
+            for (final QueryIndex.Field f : field.fields) {
+                switch (f) {
+                    case ARTIST:
+                        if (index.album(ordinal).artistKey().contains(value)) {
+                            return true;
+                        }
+                        break;
+                    case ALBUM:
+                        if (index.album(ordinal).nameKey().contains(value)) {
+                            return true;
+                        }
+                        break;
+                    default:
+                        final Track t = index.track(ordinal);
+                        if (t.nameKey().contains(value) || t.titleKey().contains(value)) {
+                            return true;
+                        }
+                        break;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public final String toString() {
+            return field.name().toLowerCase(Locale.ROOT) + ":\"" + value + "\"";
+        }
+
+    }
+
+    private enum TextField {
+
+        ANY(List.of(QueryIndex.Field.ARTIST, QueryIndex.Field.ALBUM, QueryIndex.Field.TITLE)),
+        ARTIST(List.of(QueryIndex.Field.ARTIST)),
+        ALBUM(List.of(QueryIndex.Field.ALBUM)),
+        TITLE(List.of(QueryIndex.Field.TITLE));
+
+        final List<QueryIndex.Field> fields;
+
+        TextField(final List<QueryIndex.Field> someFields) {
+            fields = someFields;
+        }
+
+    }
+
+    private static final Pattern FIELD = Pattern.compile("^([A-Za-z]+)(:|>=|<=|>|<|=)(.+)$");
+
+    private static final Pattern INTERVAL = Pattern.compile("^(\\d{1,9})(?:\\.\\.(\\d{1,9}))?$");
+
+    private final String text;
+
+    private final Node root;
+
+    private final boolean freeText;
+
+    private Query(final String aText, final Node aRoot, final boolean isFreeText) {
+        text = aText;
+        root = aRoot;
+        freeText = isFreeText;
+    }
+
+    public static Query parse(final String text) {
+        final Parser p = new Parser(text);
+        final Node root = p.parse();
+        return new Query(text, root, !p.structured);
+    }
+
+    /* node for field op value, null if not a known field or not a valid value for it. */
+    private static Node field(final String name, final String op, final String value) {
+        switch (name) {
+            case "artist":
+                return text(TextField.ARTIST, op, value);
+            case "album":
+                return text(TextField.ALBUM, op, value);
+            case "title":
+            case "track":
+                return text(TextField.TITLE, op, value);
+            case "genre":
+                return facet(Facet.GENRE, op, value);
+            case "decade":
+                return facet(Facet.DECADE, op, value);
+            case "format":
+                return facet(Facet.FORMAT, op, value);
+            case "quality":
+                return facet(Facet.QUALITY, op, value);
+            case "year":
+                return range(RangeField.YEAR, op, value);
+            case "bitrate":
+                return range(RangeField.BITRATE, op, value);
+            default:
+                return null;
+        }
+    }
+
+    private static Node facet(final Facet facet, final String op, final String value) {
+        final String folded = Names.fold(value);
+        return !":".equals(op) || folded.isEmpty() ? null : new FacetValue(facet, folded);
+    }
+
+    private static Node range(final RangeField field, final String op, final String value) {
+        final Matcher m = INTERVAL.matcher(value.trim());
+        if (!m.matches() || m.group(2) != null && !":".equals(op)) {
+            return null;
+        }
+        final int n = Integer.parseInt(m.group(1));
+        switch (op) {
+            case ">":
+                return new Range(field, n + 1, Integer.MAX_VALUE - 1);
+            case ">=":
+                return new Range(field, n, Integer.MAX_VALUE - 1);
+            case "<":
+                return new Range(field, 1, n - 1);
+            case "<=":
+                return new Range(field, 1, n);
+            default:
+                return new Range(field, n, m.group(2) == null ? n : Integer.parseInt(m.group(2)));
+        }
+    }
+
+    private static Node text(final TextField field, final String op, final String value) {
+        final String folded = Names.fold(value);
+        return !":".equals(op) || folded.isEmpty() ? null : new Text(field, folded);
+    }
+
+    /* true if the query is only made of words: a plain search rather than a structured query. */
+    public final boolean isFreeText() {
+        return freeText;
+    }
+
+    /* the source text. */
+    public final String text() {
+        return text;
+    }
+
+    /* the syntax tree, as evaluated. */
+    @Override
+    public final String toString() {
+        return root.toString();
+    }
+
+    /* the given candidates that match this query. */
+    final Bitmap select(final QueryIndex index, final Bitmap candidates) {
+        return root.evaluate(index, candidates);
+    }
+
+}
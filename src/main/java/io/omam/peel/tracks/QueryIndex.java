@@ -0,0 +1,241 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/*
+ * indexes answering the clauses of structured queries, over the same track ordinals as the facets: trigrams of the
+ * folded artist, album and track names, and sorted ranges of years and bitrates.
+ */
+final class QueryIndex {
+
+    enum Field {
+        ARTIST,
+        ALBUM,
+        TITLE;
+    }
+
+    /* values sorted with their ordinals: a range is found by binary search. */
+    static final class Range {
+
+        private final int[] values;
+
+        private final int[] ordinals;
+
+        private Range(final int[] someValues, final int[] someOrdinals) {
+            values = someValues;
+            ordinals = someOrdinals;
+        }
+
+        private static Range of(final Track[] tracks, final ToIntFunction<Track> value) {
+            final long[] pairs = new long[tracks.length];
+            int n = 0;
+            for (int i = 0; i < tracks.length; i++) {
+                final int v = value.applyAsInt(tracks[i]);
+                if (v != 0) {
+                    pairs[n++] = (long) v << 32 | i;
+                }
+            }
+            Arrays.sort(pairs, 0, n);
+            final int[] values = new int[n];
+            final int[] ordinals = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = (int) (pairs[i] >>> 32);
+                ordinals[i] = (int) pairs[i];
+            }
+            return new Range(values, ordinals);
+        }
+
+        final int count(final int min, final int max) {
+            return Math.max(0, lowerBound(max + 1L) - lowerBound(min));
+        }
+
+        final Bitmap select(final int min, final int max) {
+            final int from = lowerBound(min);
+            final int to = lowerBound(max + 1L);
+            if (from >= to) {
+                return Bitmap.empty();
+            }
+            return Bitmap.of(Arrays.copyOfRange(ordinals, from, to));
+        }
+
+        private int lowerBound(final long value) {
+            int lo = 0;
+            int hi = values.length;
+            while (lo < hi) {
+                final int mid = lo + hi >>> 1;
+                if (values[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+    }
+
+    private static final int GRAM = 3;
+
+    private final Facets facets;
+
+    private final Track[] tracks;
+
+    private final Album[] albums;
+
+    private final Map<Field, Map<String, Bitmap>> grams;
+
+    private final Range years;
+
+    private final Range bitrates;
+
+    private QueryIndex(final Facets someFacets, final Track[] someTracks, final Album[] someAlbums,
+            final Map<Field, Map<String, Bitmap>> someGrams) {
+        facets = someFacets;
+        tracks = someTracks;
+        albums = someAlbums;
+        grams = someGrams;
+        years = Range.of(someTracks, t -> t.year().orElse(0));
+        bitrates = Range.of(someTracks, t -> t.bitrate().orElse(0));
+    }
+
+    static QueryIndex of(final List<Album> albumList, final Facets facets) {
+        final List<Track> trackList = new ArrayList<>();
+        final List<Album> owners = new ArrayList<>();
+        final Map<Field, Map<String, Bitmap.Builder>> builders = new EnumMap<>(Field.class);
+        for (final Field field : Field.values()) {
+            builders.put(field, new HashMap<>());
+        }
+        for (final Album album : albumList) {
+            for (final Track track : album.tracks()) {
+                final int ordinal = trackList.size();
+                trackList.add(track);
+                owners.add(album);
+                /* ordinals only increase: every builder gets its values in order. */
+                addGrams(builders.get(Field.ARTIST), album.artistKey(), ordinal);
+                addGrams(builders.get(Field.ALBUM), album.nameKey(), ordinal);
+                addGrams(builders.get(Field.TITLE), track.nameKey(), ordinal);
+                if (!track.titleKey().equals(track.nameKey())) {
+                    addGrams(builders.get(Field.TITLE), track.titleKey(), ordinal);
+                }
+            }
+        }
+        final Map<Field, Map<String, Bitmap>> grams = new EnumMap<>(Field.class);
+        builders.forEach((field, b) -> {
+            final Map<String, Bitmap> m = new HashMap<>(b.size() * 2);
+            b.forEach((gram, builder) -> m.put(gram, builder.build()));
+            grams.put(field, m);
+        });
+        return new QueryIndex(facets, trackList.toArray(new Track[0]), owners.toArray(new Album[0]), grams);
+    }
+
+    private static void addGrams(final Map<String, Bitmap.Builder> builders, final String key, final int ordinal) {
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            builders.computeIfAbsent(key.substring(i, i + GRAM), g -> new Bitmap.Builder()).add(ordinal);
+        }
+    }
+
+    final Album album(final int ordinal) {
+        return albums[ordinal];
+    }
+
+    final Bitmap all() {
+        return facets.all();
+    }
+
+    final Range bitrates() {
+        return bitrates;
+    }
+
+    final Facets facets() {
+        return facets;
+    }
+
+    /*
+     * tracks whose key of the given field may contain the given folded text, null if the text is too short to be
+     * looked up; always a superset of the actual matches.
+     */
+    final Bitmap grams(final Field field, final String text) {
+        if (text.length() < GRAM) {
+            return null;
+        }
+        final Map<String, Bitmap> m = grams.get(field);
+        final List<Bitmap> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            final Bitmap b = m.get(text.substring(i, i + GRAM));
+            if (b == null) {
+                return Bitmap.empty();
+            }
+            postings.add(b);
+        }
+        /* smallest first: intersections only shrink. */
+        postings.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        Bitmap result = postings.get(0);
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result = result.and(postings.get(i));
+        }
+        return result;
+    }
+
+    /* upper bound of the number of tracks whose key of the given field contains the given folded text. */
+    final int gramsEstimate(final Field field, final String text) {
+        if (text.length() < GRAM) {
+            return size();
+        }
+        final Map<String, Bitmap> m = grams.get(field);
+        int min = size();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            final Bitmap b = m.get(text.substring(i, i + GRAM));
+            min = Math.min(min, b == null ? 0 : b.cardinality());
+        }
+        return min;
+    }
+
+    final int size() {
+        return tracks.length;
+    }
+
+    final Track track(final int ordinal) {
+        return tracks[ordinal];
+    }
+
+    final Range years() {
+        return years;
+    }
+
+}
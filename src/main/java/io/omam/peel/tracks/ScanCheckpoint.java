@@ -0,0 +1,359 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * progress of a full scan, saved to disk every so often so that an interrupted scan - application closed, share
+ * dropped - resumes where it stopped: every directory scanned so far, with the album found in it and its
+ * subdirectories. A directory is only skipped on resume if its last modified time, and the ones of its discs, have
+ * not changed since. The file is a journal: the first save of a scan replaces it atomically with all the progress
+ * known - compacting what previous scans appended - later saves only append the directories scanned since; a
+ * record cut short by a crash is ignored. The file is deleted once the scan is complete.
+ */
+final class ScanCheckpoint {
+
+    /* a scanned directory. */
+    static final class Entry {
+
+        /* last modified time in milliseconds of the directory and of its discs. */
+        final Map<Path, Long> stamps;
+
+        /* subdirectories to walk, discs excluded. */
+        final List<Path> subdirectories;
+
+        /* null if the directory contains no tracks. */
+        final Album album;
+
+        Entry(final Map<Path, Long> someStamps, final List<Path> someSubdirectories, final Album anAlbum) {
+            stamps = someStamps;
+            subdirectories = someSubdirectories;
+            album = anAlbum;
+        }
+
+    }
+
+    private static final ScanCheckpoint NONE = new ScanCheckpoint(null, null, Map.of());
+
+    private static final int MAGIC = 0x5045454c;
+
+    private static final int FORMAT_VERSION = 3;
+
+    private static final long SAVE_INTERVAL = TimeUnit.SECONDS.toNanos(15);
+
+    private static final Logger LOGGER = Logger.getLogger(ScanCheckpoint.class.getName());
+
+    private final Path file;
+
+    private final Path root;
+
+    /* directories scanned by a previous, interrupted, scan. */
+    private final Map<Path, Entry> previous;
+
+    /* directories scanned by this scan, resumed ones included. */
+    private final Map<Path, Entry> scanned;
+
+    /* directories scanned since the last save, appended to the file by the next one. */
+    private final Queue<Map.Entry<Path, Entry>> unsaved;
+
+    private final AtomicLong nextSave;
+
+    /* whether this scan has rewritten the file: saves then only append to it. */
+    private boolean compacted;
+
+    private ScanCheckpoint(final Path aFile, final Path aRoot, final Map<Path, Entry> somePrevious) {
+        file = aFile;
+        root = aRoot;
+        previous = somePrevious;
+        scanned = new ConcurrentHashMap<>();
+        unsaved = new ConcurrentLinkedQueue<>();
+        nextSave = new AtomicLong(System.nanoTime() + SAVE_INTERVAL);
+        compacted = false;
+    }
+
+    /* never saved: every scan starts from zero. */
+    static ScanCheckpoint none() {
+        return NONE;
+    }
+
+    /* the checkpoint of the given root in the given file, resuming the scan it records if any. */
+    static ScanCheckpoint open(final Path file, final Path root) {
+        Map<Path, Entry> previous = Map.of();
+        try {
+            previous = read(file, root);
+            if (!previous.isEmpty()) {
+                LOGGER.info(() -> "Resuming scan of " + root + " from " + file);
+            }
+        } catch (final NoSuchFileException e) {
+            /* nothing to resume. */
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid scan checkpoint " + file, e);
+        }
+        return new ScanCheckpoint(file, root, previous);
+    }
+
+    private static Map<Path, Entry> read(final Path file, final Path root) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(root.toString())) {
+                return Map.of();
+            }
+            /* records appended later replace those of the same directory. */
+            final Map<Path, Entry> entries = new HashMap<>();
+            while (true) {
+                try {
+                    if (in.readInt() != MAGIC) {
+                        LOGGER.warning(() -> "Ignoring the end of scan checkpoint " + file);
+                        return entries;
+                    }
+                    final Path dir = root.resolve(in.readUTF());
+                    entries.put(dir, readEntry(in, root));
+                } catch (final EOFException e) {
+                    /* end of the journal, or last record cut short. */
+                    return entries;
+                }
+            }
+        }
+    }
+
+    private static Album readAlbum(final DataInputStream in, final Path root) throws IOException {
+        final String artist = in.readUTF();
+        final String name = in.readUTF();
+        final int trackCount = in.readInt();
+        final List<Track> tracks = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            final Path path = root.resolve(in.readUTF());
+            final String trackName = in.readUTF();
+            final String title = readNullable(in);
+            final String genre = readNullable(in);
+            final int year = in.readInt();
+            final int bitrate = in.readInt();
+            final long size = in.readLong();
+            final long modified = in.readLong();
+            final Tags tags = Tags.of(title, genre, year, bitrate);
+            tracks.add(new Track(artist, name, trackName, path, tags, size, modified));
+        }
+        return new Album(artist, name, tracks);
+    }
+
+    private static Entry readEntry(final DataInputStream in, final Path root) throws IOException {
+        final int stampCount = in.readInt();
+        final Map<Path, Long> stamps = new LinkedHashMap<>();
+        for (int j = 0; j < stampCount; j++) {
+            stamps.put(root.resolve(in.readUTF()), in.readLong());
+        }
+        final int subdirectoryCount = in.readInt();
+        final List<Path> subdirectories = new ArrayList<>(subdirectoryCount);
+        for (int j = 0; j < subdirectoryCount; j++) {
+            subdirectories.add(root.resolve(in.readUTF()));
+        }
+        final Album album = in.readBoolean() ? readAlbum(in, root) : null;
+        return new Entry(stamps, subdirectories, album);
+    }
+
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeAlbum(final DataOutputStream out, final Album album, final Path root)
+            throws IOException {
+        out.writeUTF(album.artist());
+        out.writeUTF(album.name());
+        final List<Track> tracks = album.tracks();
+        out.writeInt(tracks.size());
+        for (final Track t : tracks) {
+            out.writeUTF(root.relativize(t.path()).toString());
+            out.writeUTF(t.name());
+            writeNullable(out, t.title().equals(t.name()) ? null : t.title());
+            writeNullable(out, t.genre().orElse(null));
+            out.writeInt(t.year().orElse(0));
+            out.writeInt(t.bitrate().orElse(0));
+            out.writeLong(t.size());
+            out.writeLong(t.modified());
+        }
+    }
+
+    private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /* the scan is complete: nothing to resume anymore. */
+    final void complete() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    /* the given directory has been scanned, or resumed. */
+    final void record(final Path dir, final Entry entry) {
+        if (file == null) {
+            return;
+        }
+        scanned.put(dir, entry);
+        /* a directory resumed unchanged is already in the file. */
+        if (previous.get(dir) != entry) {
+            unsaved.add(Map.entry(dir, entry));
+        }
+    }
+
+    /*
+     * writes the progress to disk: the first save of a scan replaces the file atomically, the next ones append the
+     * directories scanned since the previous save.
+     */
+    final synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (compacted) {
+                append();
+            } else {
+                compact();
+                compacted = true;
+            }
+        } catch (final IOException e) {
+            /* e.g. file removed: written whole again next time. */
+            compacted = false;
+            LOGGER.log(Level.WARNING, "Could not save scan checkpoint " + file, e);
+        }
+    }
+
+    /* saves if the last save is old enough, from any thread: at most one thread saves at a time. */
+    final void saveIfDue() {
+        final long next = nextSave.get();
+        if (file != null && System.nanoTime() - next >= 0
+            && nextSave.compareAndSet(next, System.nanoTime() + SAVE_INTERVAL)) {
+            save();
+        }
+    }
+
+    /* the given directory as recorded by the interrupted scan, null if it was not scanned. */
+    final Entry scanned(final Path dir) {
+        return previous.get(dir);
+    }
+
+    /* appends the directories scanned since the previous save to the file. */
+    private void append() throws IOException {
+        final List<Map.Entry<Path, Entry>> entries = new ArrayList<>();
+        for (Map.Entry<Path, Entry> e = unsaved.poll(); e != null; e = unsaved.poll()) {
+            entries.add(e);
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)))) {
+            for (final Map.Entry<Path, Entry> e : entries) {
+                write(out, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /* replaces the file atomically with all the progress known. */
+    private void compact() throws IOException {
+        unsaved.clear();
+        /* directories of the interrupted scan not scanned again yet are still valid progress. */
+        final Map<Path, Entry> all = new HashMap<>(previous);
+        all.putAll(scanned);
+        final Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (final DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(root.toString());
+                for (final Map.Entry<Path, Entry> e : all.entrySet()) {
+                    write(out, e.getKey(), e.getValue());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /* one record of the journal. */
+    private void write(final DataOutputStream out, final Path dir, final Entry entry) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeUTF(root.relativize(dir).toString());
+        out.writeInt(entry.stamps.size());
+        for (final Map.Entry<Path, Long> stamp : entry.stamps.entrySet()) {
+            out.writeUTF(root.relativize(stamp.getKey()).toString());
+            out.writeLong(stamp.getValue());
+        }
+        out.writeInt(entry.subdirectories.size());
+        for (final Path subdirectory : entry.subdirectories) {
+            out.writeUTF(root.relativize(subdirectory).toString());
+        }
+        out.writeBoolean(entry.album != null);
+        if (entry.album != null) {
+            writeAlbum(out, entry.album, root);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/*
+ * what the user is looking at, so that pending directories are scanned in that order: first the directories of
+ * the artist the user is waiting for, then those of the visible artists, then everything else.
+ */
+public final class ScanPriority {
+
+    static final int NONE = 0;
+
+    private static final int VISIBLE = 1;
+
+    private static final int REQUESTED = 2;
+
+    private volatile Set<String> visible;
+
+    private volatile String requested;
+
+    private final List<Runnable> listeners;
+
+    public ScanPriority() {
+        visible = Set.of();
+        requested = null;
+        listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /* the user is waiting for the given artist, e.g. just clicked it. */
+    public final void request(final String artist) {
+        requested = Names.fold(artist);
+        changed();
+    }
+
+    /* the user is looking at the given artists. */
+    public final void show(final Collection<String> artists) {
+        visible = artists.stream().map(Names::fold).collect(Collectors.toUnmodifiableSet());
+        changed();
+    }
+
+    /* called, from any thread, every time priorities change. */
+    final void addListener(final Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /* priority of the given directory: the highest of its path elements, NONE if not looked at. */
+    final int of(final Path dir) {
+        final Set<String> v = visible;
+        final String r = requested;
+        if (v.isEmpty() && r == null) {
+            return NONE;
+        }
+        int result = NONE;
+        for (final Path element : dir) {
+            final String name = Names.fold(element.toString());
+            if (name.equals(r)) {
+                return REQUESTED;
+            }
+            if (v.contains(name)) {
+                result = VISIBLE;
+            }
+        }
+        return result;
+    }
+
+    final void removeListener(final Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void changed() {
+        listeners.forEach(Runnable::run);
+    }
+
+}
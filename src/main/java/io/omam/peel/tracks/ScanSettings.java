@@ -0,0 +1,111 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+public final class ScanSettings {
+
+    private static final int DEFAULT_MAX_DEPTH = 8;
+
+    private static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 16;
+
+    private final int maxDepth;
+
+    private final int parallelism;
+
+    private final boolean followLinks;
+
+    private final boolean remote;
+
+    private final int maxOutstandingRequests;
+
+    private final long injectedLatency;
+
+    public ScanSettings(final int aMaxDepth, final int aParallelism, final boolean isFollowLinks) {
+        this(aMaxDepth, aParallelism, isFollowLinks, false, DEFAULT_MAX_OUTSTANDING_REQUESTS, 0);
+    }
+
+    /*
+     * remote: the library is on a high-latency file system, use the metadata cache, with at most the given number
+     * of requests in flight. injectedLatency: milliseconds added to every file system request, for testing.
+     */
+    public ScanSettings(final int aMaxDepth, final int aParallelism, final boolean isFollowLinks,
+            final boolean isRemote, final int aMaxOutstandingRequests, final long anInjectedLatency) {
+        if (aMaxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth [" + aMaxDepth + "] must be positive");
+        }
+        if (aParallelism < 1) {
+            throw new IllegalArgumentException("parallelism [" + aParallelism + "] must be strictly positive");
+        }
+        if (aMaxOutstandingRequests < 1) {
+            throw new IllegalArgumentException("maxOutstandingRequests [" + aMaxOutstandingRequests
+                + "] must be strictly positive");
+        }
+        if (anInjectedLatency < 0) {
+            throw new IllegalArgumentException("injectedLatency [" + anInjectedLatency + "] must be positive");
+        }
+        maxDepth = aMaxDepth;
+        parallelism = aParallelism;
+        followLinks = isFollowLinks;
+        remote = isRemote;
+        maxOutstandingRequests = aMaxOutstandingRequests;
+        injectedLatency = anInjectedLatency;
+    }
+
+    public static ScanSettings defaults() {
+        final int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        return new ScanSettings(DEFAULT_MAX_DEPTH, parallelism, true);
+    }
+
+    public final boolean followLinks() {
+        return followLinks;
+    }
+
+    public final long injectedLatency() {
+        return injectedLatency;
+    }
+
+    public final boolean isRemote() {
+        return remote;
+    }
+
+    public final int maxDepth() {
+        return maxDepth;
+    }
+
+    public final int maxOutstandingRequests() {
+        return maxOutstandingRequests;
+    }
+
+    public final int parallelism() {
+        return parallelism;
+    }
+
+}
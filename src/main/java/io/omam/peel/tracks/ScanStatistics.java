@@ -0,0 +1,304 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/*
+ * live counters of the scan of a library root, updated by the walker threads and read from any thread through
+ * snapshots: throughput, queue depths, errors and an estimate of the time left.
+ */
+public final class ScanStatistics {
+
+    /* the counters at some point in time; the snapshots of several roots add up. */
+    public static final class Snapshot {
+
+        private final long elapsed;
+
+        private final long directories;
+
+        private final long discovered;
+
+        private final long resumed;
+
+        private final long files;
+
+        private final long tagBytes;
+
+        private final long errors;
+
+        private final int queued;
+
+        private final int waiting;
+
+        private final boolean running;
+
+        private Snapshot(final long anElapsed, final long someDirectories, final long someDiscovered,
+                final long someResumed, final long someFiles, final long someTagBytes, final long someErrors,
+                final int aQueued, final int aWaiting, final boolean isRunning) {
+            elapsed = anElapsed;
+            directories = someDirectories;
+            discovered = someDiscovered;
+            resumed = someResumed;
+            files = someFiles;
+            tagBytes = someTagBytes;
+            errors = someErrors;
+            queued = aQueued;
+            waiting = aWaiting;
+            running = isRunning;
+        }
+
+        private static String bytes(final long count) {
+            if (count < 1_000_000) {
+                return String.format("%.1f kB", count / 1e3);
+            }
+            if (count < 1_000_000_000) {
+                return String.format("%.1f MB", count / 1e6);
+            }
+            return String.format("%.1f GB", count / 1e9);
+        }
+
+        private static String duration(final Duration d) {
+            final long seconds = d.getSeconds();
+            if (seconds < 60) {
+                return seconds + " s";
+            }
+            if (seconds < 3600) {
+                return seconds / 60 + " min " + seconds % 60 + " s";
+            }
+            return seconds / 3600 + " h " + seconds % 3600 / 60 + " min";
+        }
+
+        /* directories scanned so far, resumed ones included. */
+        public final long directories() {
+            return directories;
+        }
+
+        public final double directoriesPerSecond() {
+            return rate(directories);
+        }
+
+        public final Duration elapsed() {
+            return Duration.ofNanos(elapsed);
+        }
+
+        /* directories that could not be listed, skipped. */
+        public final long errors() {
+            return errors;
+        }
+
+        /* time left at the current pace, unknown before the first directory has been scanned. */
+        public final Optional<Duration> eta() {
+            final double rate = directoriesPerSecond();
+            if (!running || rate <= 0) {
+                return Optional.empty();
+            }
+            return Optional.of(Duration.ofMillis(Math.round(remaining() / rate * 1000)));
+        }
+
+        /* track files found so far. */
+        public final long files() {
+            return files;
+        }
+
+        public final double filesPerSecond() {
+            return rate(files);
+        }
+
+        public final boolean isRunning() {
+            return running;
+        }
+
+        /* the sum of this snapshot and the given one, e.g. of another root scanned concurrently. */
+        public final Snapshot plus(final Snapshot other) {
+            return new Snapshot(Math.max(elapsed, other.elapsed), directories + other.directories,
+                                discovered + other.discovered, resumed + other.resumed, files + other.files,
+                                tagBytes + other.tagBytes, errors + other.errors, queued + other.queued,
+                                waiting + other.waiting, running || other.running);
+        }
+
+        /* directories waiting for a walker thread. */
+        public final int queued() {
+            return queued;
+        }
+
+        /*
+         * directories found but not scanned yet: a lower bound of the directories left, close to the actual count
+         * once the walk has reached the albums since directories are walked breadth first.
+         */
+        public final long remaining() {
+            return Math.max(0, discovered - directories);
+        }
+
+        /* directories taken from the checkpoint of an interrupted scan instead of being scanned again. */
+        public final long resumed() {
+            return resumed;
+        }
+
+        /* bytes read from track files to get their tags. */
+        public final long tagBytes() {
+            return tagBytes;
+        }
+
+        @Override
+        public final String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(directories).append(" directories");
+            if (running) {
+                sb.append(String.format(" (%.0f/s)", directoriesPerSecond()));
+            }
+            sb.append(", ").append(files).append(" files");
+            if (running) {
+                sb.append(String.format(" (%.0f/s)", filesPerSecond()));
+            }
+            sb.append(", ").append(bytes(tagBytes)).append(" of tags");
+            if (resumed > 0) {
+                sb.append(", ").append(resumed).append(" resumed");
+            }
+            if (errors > 0) {
+                sb.append(", ").append(errors).append(errors == 1 ? " error" : " errors");
+            }
+            if (running) {
+                sb.append(", ").append(queued).append(" queued");
+                if (waiting > 0) {
+                    sb.append(", ").append(waiting).append(" waiting for the file system");
+                }
+                eta().ifPresent(d -> sb.append(", about ").append(duration(d)).append(" left"));
+            } else {
+                sb.append(" in ").append(duration(elapsed()));
+            }
+            return sb.toString();
+        }
+
+        /* requests waiting for the file system, remote roots only. */
+        public final int waiting() {
+            return waiting;
+        }
+
+        private double rate(final long count) {
+            return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+        }
+
+    }
+
+    private static final Snapshot NONE = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0, 0, false);
+
+    private final LongAdder directories;
+
+    private final LongAdder discovered;
+
+    private final LongAdder resumed;
+
+    private final LongAdder files;
+
+    private final LongAdder tagBytes;
+
+    private final LongAdder errors;
+
+    private volatile IntSupplier queued;
+
+    private volatile IntSupplier waiting;
+
+    private volatile long started;
+
+    private volatile long finished;
+
+    public ScanStatistics() {
+        directories = new LongAdder();
+        discovered = new LongAdder();
+        resumed = new LongAdder();
+        files = new LongAdder();
+        tagBytes = new LongAdder();
+        errors = new LongAdder();
+        queued = () -> 0;
+        waiting = () -> 0;
+        started = 0;
+        finished = 0;
+    }
+
+    /* nothing scanned. */
+    public static Snapshot none() {
+        return NONE;
+    }
+
+    /* the counters now. */
+    public final Snapshot snapshot() {
+        final long s = started;
+        if (s == 0) {
+            return NONE;
+        }
+        final long f = finished;
+        final boolean running = f == 0;
+        final long elapsed = (running ? System.nanoTime() : f) - s;
+        return new Snapshot(elapsed, directories.sum(), discovered.sum(), resumed.sum(), files.sum(),
+                            tagBytes.sum(), errors.sum(), running ? queued.getAsInt() : 0,
+                            running ? waiting.getAsInt() : 0, running);
+    }
+
+    /* a directory has been found, to be scanned. */
+    final void discovered() {
+        discovered.increment();
+    }
+
+    final void error() {
+        errors.increment();
+    }
+
+    final void finished() {
+        finished = System.nanoTime();
+    }
+
+    /* a directory holding the given number of track files has been scanned, or resumed. */
+    final void scanned(final int trackFiles, final boolean isResumed) {
+        directories.increment();
+        files.add(trackFiles);
+        if (isResumed) {
+            resumed.increment();
+        }
+    }
+
+    /* the scan starts, its queues have the given depths. */
+    final void started(final IntSupplier someQueued, final IntSupplier someWaiting) {
+        queued = someQueued;
+        waiting = someWaiting;
+        finished = 0;
+        started = System.nanoTime();
+    }
+
+    /* counter of the bytes read to get tags. */
+    final LongAdder tagBytes() {
+        return tagBytes;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Windowed access to the results of a search: items are only produced when a window needs them (plus some read
+ * ahead), through the demand of the underlying publisher.
+ */
+public final class SearchCursor<T> implements Flow.Subscriber<T> {
+
+    private final int readAhead;
+
+    private final Lock lock;
+
+    private final Condition changed;
+
+    private final List<T> items;
+
+    private Flow.Subscription subscription;
+
+    private long requested;
+
+    private boolean complete;
+
+    private SearchCursor(final int aReadAhead) {
+        readAhead = aReadAhead;
+        lock = new ReentrantLock();
+        changed = lock.newCondition();
+        items = new ArrayList<>();
+        subscription = null;
+        requested = 0;
+        complete = false;
+    }
+
+    public static <T> SearchCursor<T> open(final Flow.Publisher<T> publisher, final int readAhead) {
+        final SearchCursor<T> cursor = new SearchCursor<>(readAhead);
+        publisher.subscribe(cursor);
+        return cursor;
+    }
+
+    public final void close() {
+        final Flow.Subscription s = subscription();
+        if (s != null) {
+            s.cancel();
+        }
+        lock.lock();
+        try {
+            complete = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* number of items found so far, extrapolated from the progress of the search. */
+    public final int estimatedCount() {
+        lock.lock();
+        try {
+            final int found = items.size();
+            if (complete) {
+                return found;
+            }
+            final double progress = progress();
+            if (progress <= 0) {
+                return found;
+            }
+            return Math.max(found, (int) Math.round(found / progress));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public final boolean isComplete() {
+        lock.lock();
+        try {
+            return complete;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final void onComplete() {
+        lock.lock();
+        try {
+            complete = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final void onError(final Throwable throwable) {
+        onComplete();
+    }
+
+    @Override
+    public final void onNext(final T item) {
+        lock.lock();
+        try {
+            items.add(item);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final void onSubscribe(final Flow.Subscription aSubscription) {
+        lock.lock();
+        try {
+            subscription = aSubscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* fraction of the search done so far, between 0 and 1, 0 if unknown. */
+    public final double progress() {
+        lock.lock();
+        try {
+            if (complete) {
+                return 1;
+            }
+            final Flow.Subscription s = subscription;
+            return s instanceof SearchPublisher.Progress ? ((SearchPublisher.Progress) s).progress() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * items in [offset, offset + limit), blocks until they have been found or the search is over: the returned
+     * window is shorter than limit only at the end of the results.
+     */
+    public final List<T> window(final int offset, final int limit) throws InterruptedException {
+        return window(offset, limit, Long.MAX_VALUE);
+    }
+
+    /*
+     * same as above, but blocks at most the given time: the returned window is then partial - shorter than limit
+     * while the search is not complete - and the following items keep being searched for in the background.
+     */
+    public final List<T> window(final int offset, final int limit, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return window(offset, limit, unit.toNanos(timeout));
+    }
+
+    private Flow.Subscription subscription() {
+        lock.lock();
+        try {
+            return subscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<T> window(final int offset, final int limit, final long timeoutNanos)
+            throws InterruptedException {
+        final int needed = offset + limit;
+        lock.lock();
+        try {
+            if (!complete && subscription != null && needed + readAhead > requested) {
+                final long n = needed + readAhead - requested;
+                requested += n;
+                subscription.request(n);
+            }
+            long nanos = timeoutNanos;
+            while (items.size() < needed && !complete) {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    changed.await();
+                } else if (nanos <= 0) {
+                    break;
+                } else {
+                    nanos = changed.awaitNanos(nanos);
+                }
+            }
+            if (offset >= items.size()) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<>(items.subList(offset, Math.min(needed, items.size())));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
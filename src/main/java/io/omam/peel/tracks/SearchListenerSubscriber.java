@@ -0,0 +1,70 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.concurrent.Flow;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+final class SearchListenerSubscriber<T> implements Flow.Subscriber<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(SearchListenerSubscriber.class.getName());
+
+    private final SearchListener<T> listener;
+
+    SearchListenerSubscriber(final SearchListener<T> aListener) {
+        listener = aListener;
+    }
+
+    @Override
+    public final void onComplete() {
+        listener.searchOver();
+    }
+
+    @Override
+    public final void onError(final Throwable throwable) {
+        LOGGER.log(Level.WARNING, throwable.getMessage(), throwable);
+        listener.searchOver();
+    }
+
+    @Override
+    public final void onNext(final T item) {
+        listener.found(item);
+    }
+
+    @Override
+    public final void onSubscribe(final Flow.Subscription subscription) {
+        listener.searchStarted();
+        /* listeners take items as fast as they are produced. */
+        subscription.request(Long.MAX_VALUE);
+    }
+
+}
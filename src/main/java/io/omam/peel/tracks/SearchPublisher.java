@@ -0,0 +1,330 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class SearchPublisher<T> implements Flow.Publisher<T> {
+
+    @FunctionalInterface
+    static interface Producer<T> {
+
+        void produce(final Sink<T> sink);
+
+    }
+
+    static interface Sink<T> {
+
+        /* blocks until the subscriber has requested more items, returns false once the search is cancelled. */
+        boolean emit(final T item);
+
+        boolean isCancelled();
+
+        /* how far the search has gone: scanned out of total candidates, used to estimate the result count. */
+        void progress(final int scanned, final int total);
+
+    }
+
+    static interface Progress {
+
+        /* in [0, 1], 0 if unknown. */
+        double progress();
+
+    }
+
+    private static final class SearchSubscription<T> implements Flow.Subscription, Sink<T>, Progress {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final Lock lock;
+
+        private final Condition demanded;
+
+        private long demand;
+
+        private boolean cancelled;
+
+        /* error signalled by the subscriber itself, delivered by the producer thread: signals are serial. */
+        private Throwable failure;
+
+        private volatile double progress;
+
+        SearchSubscription(final Flow.Subscriber<? super T> aSubscriber) {
+            subscriber = aSubscriber;
+            lock = new ReentrantLock();
+            demanded = lock.newCondition();
+            demand = 0;
+            cancelled = false;
+            failure = null;
+            progress = 0;
+        }
+
+        @Override
+        public final void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public final boolean emit(final T item) {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled) {
+                    demanded.await();
+                }
+                if (cancelled || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                demand--;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                lock.unlock();
+            }
+            subscriber.onNext(item);
+            return true;
+        }
+
+        @Override
+        public final boolean isCancelled() {
+            lock.lock();
+            try {
+                return cancelled || Thread.currentThread().isInterrupted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public final double progress() {
+            return progress;
+        }
+
+        @Override
+        public final void progress(final int scanned, final int total) {
+            if (total > 0) {
+                progress = Math.min(1.0, (double) scanned / total);
+            }
+        }
+
+        @Override
+        public final void request(final long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    if (!cancelled && failure == null) {
+                        failure = new IllegalArgumentException("non-positive request: " + n);
+                    }
+                    cancelled = true;
+                    demanded.signalAll();
+                    return;
+                }
+                final long sum = demand + n;
+                /* saturate on overflow: effectively unbounded. */
+                demand = sum < 0 ? Long.MAX_VALUE : sum;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        final void run(final Producer<T> producer) {
+            RuntimeException thrown = null;
+            try {
+                producer.produce(this);
+            } catch (final RuntimeException e) {
+                thrown = e;
+            }
+            final Throwable error;
+            lock.lock();
+            try {
+                if (failure != null) {
+                    error = failure;
+                    failure = null;
+                } else if (cancelled || Thread.currentThread().isInterrupted()) {
+                    /* interrupted or cancelled searches never complete. */
+                    return;
+                } else {
+                    error = thrown;
+                }
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                progress = 1.0;
+                subscriber.onComplete();
+            }
+        }
+
+    }
+
+    /* sink of one of several producers running in parallel. */
+    private static final class ParallelSink<T> implements Sink<T> {
+
+        private final Sink<T> sink;
+
+        private final Lock emitting;
+
+        private final double[] progress;
+
+        private final int index;
+
+        private final boolean[] stopped;
+
+        ParallelSink(final Sink<T> aSink, final Lock anEmitting, final double[] someProgress, final int anIndex,
+                final boolean[] isStopped) {
+            sink = aSink;
+            emitting = anEmitting;
+            progress = someProgress;
+            index = anIndex;
+            stopped = isStopped;
+        }
+
+        @Override
+        public final boolean emit(final T item) {
+            /* subscribers are signalled serially. */
+            emitting.lock();
+            try {
+                return !isCancelled() && sink.emit(item);
+            } finally {
+                emitting.unlock();
+            }
+        }
+
+        @Override
+        public final boolean isCancelled() {
+            synchronized (stopped) {
+                if (stopped[0]) {
+                    return true;
+                }
+            }
+            return sink.isCancelled();
+        }
+
+        @Override
+        public final void progress(final int scanned, final int total) {
+            if (total <= 0) {
+                return;
+            }
+            synchronized (progress) {
+                progress[index] = Math.min(1.0, (double) scanned / total);
+                double sum = 0;
+                for (final double p : progress) {
+                    sum += p;
+                }
+                sink.progress((int) (sum * 1000), progress.length * 1000);
+            }
+        }
+
+    }
+
+    private final Producer<T> producer;
+
+    private final Executor executor;
+
+    SearchPublisher(final Producer<T> aProducer, final Executor anExecutor) {
+        producer = aProducer;
+        executor = anExecutor;
+    }
+
+    /*
+     * a producer running all the given producers in parallel on the given executor, waiting for all of them to be
+     * done: a slow producer never holds back the items of the others. The first producer to fail stops the others
+     * and its exception is thrown once they are done, failing the search.
+     */
+    static <T> Producer<T> parallel(final List<Producer<T>> producers, final Executor executor) {
+        return sink -> {
+            final Lock emitting = new ReentrantLock();
+            final double[] progress = new double[producers.size()];
+            final boolean[] stopped = { false };
+            final RuntimeException[] failure = { null };
+            final CountDownLatch done = new CountDownLatch(producers.size());
+            for (int i = 0; i < producers.size(); i++) {
+                final Producer<T> p = producers.get(i);
+                final Sink<T> ps = new ParallelSink<>(sink, emitting, progress, i, stopped);
+                executor.execute(() -> {
+                    try {
+                        p.produce(ps);
+                    } catch (final RuntimeException e) {
+                        synchronized (stopped) {
+                            if (failure[0] == null) {
+                                failure[0] = e;
+                            }
+                            stopped[0] = true;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            try {
+                done.await();
+            } catch (final InterruptedException e) {
+                /* the producers do not run on this thread: tell them to stop. */
+                synchronized (stopped) {
+                    stopped[0] = true;
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized (stopped) {
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+        };
+    }
+
+    @Override
+    public final void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        final SearchSubscription<T> subscription = new SearchSubscription<>(subscriber);
+        subscriber.onSubscribe(subscription);
+        executor.execute(() -> subscription.run(producer));
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * search results kept in their final order as they are found: every result is inserted at its position, returned
+ * so that a view can insert it at the same position instead of sorting, or waiting for, all the results. Results
+ * comparing equal keep the order in which they were found. Not thread-safe.
+ */
+public final class SortedResults<T> {
+
+    private final Comparator<? super T> comparator;
+
+    private final List<T> items;
+
+    private SortedResults(final Comparator<? super T> aComparator) {
+        comparator = aComparator;
+        items = new ArrayList<>();
+    }
+
+    /* albums in library order: by artist then by name. */
+    public static SortedResults<Album> albums() {
+        return new SortedResults<>(Tracks.ALBUM_COMPARATOR);
+    }
+
+    /* artists in library order: by index letter then by name. */
+    public static SortedResults<Artist> artists() {
+        return new SortedResults<>(Tracks.ARTIST_COMPARATOR);
+    }
+
+    /* inserts the given result, returns its position: after every result that does not compare greater. */
+    public final int add(final T item) {
+        int lo = 0;
+        int hi = items.size();
+        while (lo < hi) {
+            final int mid = lo + hi >>> 1;
+            if (comparator.compare(items.get(mid), item) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        items.add(lo, item);
+        return lo;
+    }
+
+    public final List<T> items() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public final int size() {
+        return items.size();
+    }
+
+}
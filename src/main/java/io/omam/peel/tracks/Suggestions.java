@@ -0,0 +1,230 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * Immutable prefix trie over the folded artist and album names of the library, packed in parallel arrays. Each
+ * node knows the highest popularity found below it, so the top-K completions of a prefix are found by a best-first
+ * walk that never visits more than needed.
+ */
+public final class Suggestions {
+
+    private static final class Node {
+
+        final TreeMap<Character, Node> children;
+
+        int entry;
+
+        int entryPopularity;
+
+        int maxPopularity;
+
+        Node() {
+            children = new TreeMap<>();
+            entry = -1;
+            entryPopularity = 0;
+            maxPopularity = 0;
+        }
+
+    }
+
+    private static final int ROOT = 0;
+
+    private static final Suggestions EMPTY = new Suggestions(new char[1], new int[1], new int[1], new int[1],
+                                                             new int[] { -1 }, new String[0], new int[0]);
+
+    /* node n: label, children in [firstChild[n], firstChild[n] + childCount[n]), sorted by label. */
+    private final char[] labels;
+
+    private final int[] firstChild;
+
+    private final int[] childCount;
+
+    private final int[] maxPopularity;
+
+    private final int[] entry;
+
+    private final String[] names;
+
+    private final int[] popularity;
+
+    private Suggestions(final char[] someLabels, final int[] someFirstChild, final int[] someChildCount,
+            final int[] someMaxPopularity, final int[] someEntry, final String[] someNames,
+            final int[] somePopularity) {
+        labels = someLabels;
+        firstChild = someFirstChild;
+        childCount = someChildCount;
+        maxPopularity = someMaxPopularity;
+        entry = someEntry;
+        names = someNames;
+        popularity = somePopularity;
+    }
+
+    public static Suggestions empty() {
+        return EMPTY;
+    }
+
+    static Suggestions of(final List<Album> albums) {
+        /* popularity: number of tracks. */
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final Album album : albums) {
+            final int tracks = album.tracks().size();
+            counts.merge(album.artist(), tracks, Integer::sum);
+            counts.merge(album.name(), tracks, Integer::sum);
+        }
+
+        final String[] names = new String[counts.size()];
+        final int[] popularity = new int[counts.size()];
+        final Node root = new Node();
+        int count = 0;
+        for (final Map.Entry<String, Integer> e : counts.entrySet()) {
+            names[count] = e.getKey();
+            popularity[count] = e.getValue();
+            final String folded = Names.fold(e.getKey());
+            insert(root, folded, count, e.getValue());
+            final String withoutArticle = Names.fold(Names.withoutArticle(e.getKey()));
+            if (!withoutArticle.equals(folded)) {
+                insert(root, withoutArticle, count, e.getValue());
+            }
+            count++;
+        }
+        return pack(root, names, popularity);
+    }
+
+    private static void insert(final Node root, final String key, final int entry, final int popularity) {
+        Node n = root;
+        n.maxPopularity = Math.max(n.maxPopularity, popularity);
+        for (int i = 0; i < key.length(); i++) {
+            n = n.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            n.maxPopularity = Math.max(n.maxPopularity, popularity);
+        }
+        /* two names folding to the same key: keep the most popular. */
+        if (n.entry == -1 || popularity > n.entryPopularity) {
+            n.entry = entry;
+            n.entryPopularity = popularity;
+        }
+    }
+
+    private static Suggestions pack(final Node root, final String[] names, final int[] popularity) {
+        final List<Node> order = new ArrayList<>();
+        final List<Character> labels = new ArrayList<>();
+        final Deque<Node> queue = new ArrayDeque<>();
+        final Map<Node, Integer> firstChildren = new HashMap<>();
+        order.add(root);
+        labels.add('\0');
+        queue.add(root);
+        /* breadth first: the children of a node are contiguous. */
+        while (!queue.isEmpty()) {
+            final Node n = queue.poll();
+            firstChildren.put(n, order.size());
+            for (final Map.Entry<Character, Node> c : n.children.entrySet()) {
+                order.add(c.getValue());
+                labels.add(c.getKey());
+                queue.add(c.getValue());
+            }
+        }
+        final int size = order.size();
+        final char[] packedLabels = new char[size];
+        final int[] firstChild = new int[size];
+        final int[] childCount = new int[size];
+        final int[] maxPopularity = new int[size];
+        final int[] entry = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Node n = order.get(i);
+            packedLabels[i] = labels.get(i);
+            firstChild[i] = firstChildren.get(n);
+            childCount[i] = n.children.size();
+            maxPopularity[i] = n.maxPopularity;
+            entry[i] = n.entry;
+        }
+        return new Suggestions(packedLabels, firstChild, childCount, maxPopularity, entry, names, popularity);
+    }
+
+    /* at most k names starting with the given prefix, most popular first. */
+    public final List<String> complete(final String prefix, final int k) {
+        final String key = Names.fold(prefix);
+        if (key.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        int node = ROOT;
+        for (int i = 0; i < key.length() && node != -1; i++) {
+            node = child(node, key.charAt(i));
+        }
+        if (node == -1) {
+            return Collections.emptyList();
+        }
+
+        /* best first: queue holds nodes (scored by their max popularity) and found entries (by popularity). */
+        final PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(b[0], a[0]));
+        queue.add(new long[] { maxPopularity[node], node, 0 });
+        final List<String> res = new ArrayList<>(k);
+        /* at most k entries are found: no allocation in the number of names per keystroke. */
+        final Set<Integer> seen = new HashSet<>();
+        while (!queue.isEmpty() && res.size() < k) {
+            final long[] head = queue.poll();
+            final int index = (int) head[1];
+            if (head[2] == 1) {
+                if (seen.add(index)) {
+                    res.add(names[index]);
+                }
+            } else {
+                if (entry[index] != -1) {
+                    queue.add(new long[] { popularity[entry[index]], entry[index], 1 });
+                }
+                for (int c = firstChild[index]; c < firstChild[index] + childCount[index]; c++) {
+                    queue.add(new long[] { maxPopularity[c], c, 0 });
+                }
+            }
+        }
+        return res;
+    }
+
+    private int child(final int node, final char label) {
+        final int from = firstChild[node];
+        final int to = from + childCount[node];
+        final int i = Arrays.binarySearch(labels, from, to, label);
+        return i < 0 ? -1 : i;
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+final class Tags {
+
+    private static final Tags NONE = new Tags(null, null, 0, 0);
+
+    /* tags are expected at the beginning of the file, never read more than this. */
+    private static final int MAX_TAG_SIZE = 256 * 1024;
+
+    private static final int ID3_HEADER_SIZE = 10;
+
+    private static final int FLAC_STREAMINFO = 0;
+
+    private static final int FLAC_VORBIS_COMMENT = 4;
+
+    /* ID3v1 genres, still referenced by number in ID3v2 content type frames. */
+    private static final String[] GENRES = { "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk",
+            "Grunge", "Hip-Hop", "Jazz", "Metal", "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae",
+            "Rock", "Techno", "Industrial", "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack",
+            "Euro-Techno", "Ambient", "Trip-Hop", "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical",
+            "Instrumental", "Acid", "House", "Game", "Sound Clip", "Gospel", "Noise", "AlternRock", "Bass", "Soul",
+            "Punk", "Space", "Meditative", "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave",
+            "Techno-Industrial", "Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult",
+            "Gangsta", "Top 40", "Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave",
+            "Psychadelic", "Rave", "Showtunes", "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka",
+            "Retro", "Musical", "Rock & Roll", "Hard Rock" };
+
+    private static final Pattern GENRE_REFERENCE = Pattern.compile("^(?:\\((\\d{1,3})\\)(.*)|(\\d{1,3}))$");
+
+    private static final Pattern YEAR = Pattern.compile("^\\s*(\\d{4}).*");
+
+    /* kbps by bitrate index, for MPEG-1 layers I, II, III then MPEG-2/2.5 layers I and II/III. */
+    private static final int[][] MPEG_BITRATES = {
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+    private final String title;
+
+    private final String genre;
+
+    private final int year;
+
+    private final int bitrate;
+
+    private Tags(final String aTitle, final String aGenre, final int aYear, final int aBitrate) {
+        title = aTitle;
+        genre = aGenre;
+        year = aYear;
+        bitrate = aBitrate;
+    }
+
+    static Tags none() {
+        return NONE;
+    }
+
+    /* tags read before, e.g. by an interrupted scan: null or 0 if unknown. */
+    static Tags of(final String title, final String genre, final int year, final int bitrate) {
+        return new Tags(title, genre, year, bitrate);
+    }
+
+    /* tags of the given file, adding the number of bytes read to the given counter. */
+    static Tags read(final Path path, final LongAdder bytes) {
+        try (final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(ID3_HEADER_SIZE);
+            fc.read(header, 0);
+            header.flip();
+            bytes.add(header.remaining());
+            if (header.remaining() < 4) {
+                return NONE;
+            }
+            if (header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+                return id3(fc, header, bytes);
+            }
+            if (header.get(0) == 'f' && header.get(1) == 'L' && header.get(2) == 'a' && header.get(3) == 'C') {
+                return flac(fc, bytes);
+            }
+            final int bitrate = mpegBitrate(header, 0);
+            return bitrate == 0 ? NONE : new Tags(null, null, 0, bitrate);
+        } catch (final IOException | RuntimeException e) {
+            /* unreadable or malformed tags: fallback to file name. */
+            return NONE;
+        }
+    }
+
+    private static Tags flac(final FileChannel fc, final LongAdder bytes) throws IOException {
+        long pos = 4;
+        boolean last = false;
+        int bitrate = 0;
+        final ByteBuffer blockHeader = ByteBuffer.allocate(4);
+        while (!last && pos < MAX_TAG_SIZE) {
+            blockHeader.clear();
+            if (fc.read(blockHeader, pos) < 4) {
+                break;
+            }
+            bytes.add(4);
+            final int flags = blockHeader.get(0) & 0xFF;
+            last = (flags & 0x80) != 0;
+            final int length = (blockHeader.get(1) & 0xFF) << 16 | (blockHeader.get(2) & 0xFF) << 8
+                | blockHeader.get(3) & 0xFF;
+            pos += 4;
+            if ((flags & 0x7F) == FLAC_STREAMINFO) {
+                bitrate = flacBitrate(read(fc, pos, Math.min(length, MAX_TAG_SIZE), bytes), fc.size());
+            } else if ((flags & 0x7F) == FLAC_VORBIS_COMMENT) {
+                final ByteBuffer block = read(fc, pos, Math.min(length, MAX_TAG_SIZE), bytes);
+                return vorbisComments(block.order(ByteOrder.LITTLE_ENDIAN), bitrate);
+            }
+            pos += length;
+        }
+        return bitrate == 0 ? NONE : new Tags(null, null, 0, bitrate);
+    }
+
+    /* average bitrate: file size over duration, the duration being given by STREAMINFO. */
+    private static int flacBitrate(final ByteBuffer streamInfo, final long fileSize) {
+        if (streamInfo.remaining() < 18) {
+            return 0;
+        }
+        final long packed = streamInfo.getLong(10);
+        final long sampleRate = packed >>> 44;
+        final long samples = packed & 0xFFFFFFFFFL;
+        if (sampleRate == 0 || samples == 0) {
+            return 0;
+        }
+        return (int) (fileSize * 8 * sampleRate / samples / 1000);
+    }
+
+    private static String genre(final String text) {
+        if (text == null) {
+            return null;
+        }
+        final Matcher m = GENRE_REFERENCE.matcher(text);
+        if (!m.matches()) {
+            return text;
+        }
+        /* "(17)", "(17)Indie Rock" or just "17": a refinement wins over the reference. */
+        final String refinement = m.group(2) == null ? "" : m.group(2).trim();
+        if (!refinement.isEmpty()) {
+            return refinement;
+        }
+        final int ref = Integer.parseInt(m.group(1) == null ? m.group(3) : m.group(1));
+        return ref < GENRES.length ? GENRES[ref] : null;
+    }
+
+    private static Tags id3(final FileChannel fc, final ByteBuffer header, final LongAdder bytes)
+            throws IOException {
+        final int major = header.get(3);
+        final boolean footer = (header.get(5) & 0x10) != 0;
+        final int size = synchsafe(header, 6);
+        final ByteBuffer tag = read(fc, ID3_HEADER_SIZE, Math.min(size, MAX_TAG_SIZE), bytes);
+        final int idLength = major == 2 ? 3 : 4;
+        final int frameHeaderLength = major == 2 ? 6 : 10;
+        String title = null;
+        String genre = null;
+        int year = 0;
+        while (tag.remaining() >= frameHeaderLength) {
+            final byte[] idBytes = new byte[idLength];
+            tag.get(idBytes);
+            if (idBytes[0] == 0) {
+                /* padding. */
+                break;
+            }
+            final String id = new String(idBytes, StandardCharsets.ISO_8859_1);
+            final int frameSize;
+            if (major == 2) {
+                frameSize = (tag.get() & 0xFF) << 16 | (tag.get() & 0xFF) << 8 | tag.get() & 0xFF;
+            } else if (major == 4) {
+                frameSize = synchsafe(tag, tag.position());
+                tag.position(tag.position() + 6);
+            } else {
+                frameSize = tag.getInt();
+                tag.position(tag.position() + 2);
+            }
+            if (frameSize <= 0 || frameSize > tag.remaining()) {
+                break;
+            }
+            switch (id) {
+                case "TIT2":
+                case "TT2":
+                    title = textFrame(frame(tag, frameSize));
+                    break;
+                case "TCON":
+                case "TCO":
+                    genre = genre(textFrame(frame(tag, frameSize)));
+                    break;
+                case "TYER":
+                case "TYE":
+                case "TDRC":
+                    year = year(textFrame(frame(tag, frameSize)));
+                    break;
+                default:
+                    tag.position(tag.position() + frameSize);
+                    break;
+            }
+        }
+        /* the first MPEG frame follows the tag, its header gives the bitrate. */
+        final long audio = ID3_HEADER_SIZE + (long) size + (footer ? ID3_HEADER_SIZE : 0);
+        final int bitrate = mpegBitrate(read(fc, audio, 4, bytes), 0);
+        if (title == null && genre == null && year == 0 && bitrate == 0) {
+            return NONE;
+        }
+        return new Tags(title, genre, year, bitrate);
+    }
+
+    private static byte[] frame(final ByteBuffer tag, final int frameSize) {
+        final byte[] frame = new byte[frameSize];
+        tag.get(frame);
+        return frame;
+    }
+
+    private static int mpegBitrate(final ByteBuffer bb, final int index) {
+        if (bb.limit() - index < 4) {
+            return 0;
+        }
+        final int h = bb.getInt(index);
+        if ((h & 0xFFE00000) != 0xFFE00000) {
+            return 0;
+        }
+        final int version = h >>> 19 & 0x3;
+        final int layer = h >>> 17 & 0x3;
+        final int bitrateIndex = h >>> 12 & 0xF;
+        if (version == 1 || layer == 0 || bitrateIndex == 0xF) {
+            /* reserved. */
+            return 0;
+        }
+        final int table;
+        if (version == 3) {
+            table = 3 - layer;
+        } else {
+            table = layer == 3 ? 3 : 4;
+        }
+        return MPEG_BITRATES[table][bitrateIndex];
+    }
+
+    private static ByteBuffer read(final FileChannel fc, final long position, final int length,
+            final LongAdder bytes) throws IOException {
+        final ByteBuffer bb = ByteBuffer.allocate(length);
+        while (bb.hasRemaining() && fc.read(bb, position + bb.position()) > 0) {
+            // keep reading.
+        }
+        bb.flip();
+        bytes.add(bb.remaining());
+        return bb;
+    }
+
+    private static int synchsafe(final ByteBuffer bb, final int index) {
+        return (bb.get(index) & 0x7F) << 21 | (bb.get(index + 1) & 0x7F) << 14 | (bb.get(index + 2) & 0x7F) << 7
+            | bb.get(index + 3) & 0x7F;
+    }
+
+    private static String textFrame(final byte[] frame) {
+        if (frame.length < 2) {
+            return null;
+        }
+        final Charset cs;
+        switch (frame[0]) {
+            case 1:
+                cs = StandardCharsets.UTF_16;
+                break;
+            case 2:
+                cs = StandardCharsets.UTF_16BE;
+                break;
+            case 3:
+                cs = StandardCharsets.UTF_8;
+                break;
+            default:
+                cs = StandardCharsets.ISO_8859_1;
+                break;
+        }
+        final String text = new String(frame, 1, frame.length - 1, cs).replace("\u0000", "").trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static Tags vorbisComments(final ByteBuffer block, final int bitrate) {
+        final int vendorLength = block.getInt();
+        block.position(block.position() + vendorLength);
+        final int count = block.getInt();
+        String title = null;
+        String genre = null;
+        int year = 0;
+        for (int i = 0; i < count && block.remaining() >= 4; i++) {
+            final int length = block.getInt();
+            if (length < 0 || length > block.remaining()) {
+                break;
+            }
+            final byte[] comment = new byte[length];
+            block.get(comment);
+            final String s = new String(comment, StandardCharsets.UTF_8);
+            final int eq = s.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            final String value = s.substring(eq + 1).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            final String name = s.substring(0, eq);
+            if ("TITLE".equalsIgnoreCase(name)) {
+                title = value;
+            } else if ("GENRE".equalsIgnoreCase(name)) {
+                genre = value;
+            } else if ("DATE".equalsIgnoreCase(name)) {
+                year = year(value);
+            }
+        }
+        return new Tags(title, genre, year, bitrate);
+    }
+
+    private static int year(final String text) {
+        if (text == null) {
+            return 0;
+        }
+        final Matcher m = YEAR.matcher(text);
+        return m.matches() ? Integer.parseInt(m.group(1)) : 0;
+    }
+
+    final OptionalInt bitrate() {
+        return bitrate == 0 ? OptionalInt.empty() : OptionalInt.of(bitrate);
+    }
+
+    final Optional<String> genre() {
+        return Optional.ofNullable(genre);
+    }
+
+    final Optional<String> title() {
+        return Optional.ofNullable(title);
+    }
+
+    final OptionalInt year() {
+        return year == 0 ? OptionalInt.empty() : OptionalInt.of(year);
+    }
+
+}
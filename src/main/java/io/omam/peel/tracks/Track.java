@@ -31,6 +31,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package io.omam.peel.tracks;
 
 import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalInt;
 
 public final class Track {
 
@@ -42,11 +45,52 @@ public final class Track {
 
     private final Path path;
 
+    private final String title;
+
+    private final String nameKey;
+
+    private final String titleKey;
+
+    private final String format;
+
+    private final String genre;
+
+    private final int year;
+
+    private final int bitrate;
+
+    /* size and last modification time of the file, -1 if unknown. */
+    private final long size;
+
+    private final long modified;
+
+    private volatile String id;
+
     Track(final String anArtist, final String anAlbum, final String aName, final Path aPath) {
+        this(anArtist, anAlbum, aName, aPath, Tags.none());
+    }
+
+    Track(final String anArtist, final String anAlbum, final String aName, final Path aPath, final Tags tags) {
+        this(anArtist, anAlbum, aName, aPath, tags, -1, -1);
+    }
+
+    Track(final String anArtist, final String anAlbum, final String aName, final Path aPath, final Tags tags,
+            final long aSize, final long aModified) {
         artist = anArtist;
         album = anAlbum;
         name = aName;
         path = aPath;
+        title = tags.title().orElse(aName);
+        nameKey = Names.fold(aName);
+        titleKey = title.equals(aName) ? nameKey : Names.fold(title);
+        final String fileName = aPath.getFileName().toString();
+        format = fileName.substring(fileName.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+        genre = tags.genre().orElse(null);
+        year = tags.year().orElse(0);
+        bitrate = tags.bitrate().orElse(0);
+        size = aSize;
+        modified = aModified;
+        id = null;
     }
 
     public final String album() {
@@ -57,6 +101,41 @@ public final class Track {
         return artist;
     }
 
+    /* average bitrate in kbps, if known. */
+    public final OptionalInt bitrate() {
+        return bitrate == 0 ? OptionalInt.empty() : OptionalInt.of(bitrate);
+    }
+
+    /* file extension, upper case. */
+    public final String format() {
+        return format;
+    }
+
+    public final Optional<String> genre() {
+        return Optional.ofNullable(genre);
+    }
+
+    /*
+     * content hash computed by the indexer in the background or by a previous run, else hashed now - a few slices
+     * of this file only: a track never has two identities.
+     */
+    public final String id() {
+        String result = id;
+        if (result == null) {
+            final String key = key();
+            result = TrackIds.known(key);
+            if (result == null) {
+                result = TrackIds.identify(path, key);
+            }
+            id = result;
+        }
+        return result;
+    }
+
+    public final boolean isIdentified() {
+        return id != null || TrackIds.known(key()) != null;
+    }
+
     public final String name() {
         return name;
     }
@@ -65,4 +144,38 @@ public final class Track {
         return path;
     }
 
+    public final String title() {
+        return title;
+    }
+
+    public final OptionalInt year() {
+        return year == 0 ? OptionalInt.empty() : OptionalInt.of(year);
+    }
+
+    /* hashes the content of the file unless already known. */
+    final void identify() {
+        id();
+    }
+
+    /* cheap key of the file, changes if the file is modified. */
+    final String key() {
+        return TrackIds.key(path, size, modified);
+    }
+
+    final long modified() {
+        return modified;
+    }
+
+    final String nameKey() {
+        return nameKey;
+    }
+
+    final long size() {
+        return size;
+    }
+
+    final String titleKey() {
+        return titleKey;
+    }
+
 }
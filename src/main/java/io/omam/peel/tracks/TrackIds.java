@@ -0,0 +1,222 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Stable track identity: 64 bits hash of the file size and of 3 memory-mapped slices of the file (head, middle,
+ * tail). Not cryptographic, only meant to survive renames, moves and restarts.
+ *
+ * Hashing is done by the indexer in the background, or on demand for a track not identified yet, e.g. queued
+ * before the indexer got to it; identities already computed - by this run or a previous one, saved per root - are
+ * looked up by the key of the file: path, size and modification time.
+ */
+final class TrackIds {
+
+    private static final Logger LOGGER = Logger.getLogger(TrackIds.class.getName());
+
+    private static final int SLICE = 64 * 1024;
+
+    private static final int MAGIC = 0x5045454c;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /* identity of every file hashed, by key; shared by all roots. */
+    private static final Map<String, String> KNOWN = new ConcurrentHashMap<>();
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private TrackIds() {
+        // empty.
+    }
+
+    /* hashes the given file and remembers its identity under the given key. */
+    static String identify(final Path path, final String key) {
+        final String id = of(path);
+        KNOWN.put(key, id);
+        return id;
+    }
+
+    /* cheap key of a file, no I/O: size and modification time are -1 if unknown. */
+    static String key(final Path path, final long size, final long modified) {
+        final ByteBuffer bb = ByteBuffer.wrap(path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+        return toHex(fmix(mix(mix(hash(SEED, bb), size), modified)));
+    }
+
+    /* identity of the file of the given key, null if never hashed. */
+    static String known(final String key) {
+        return KNOWN.get(key);
+    }
+
+    /* reads the identities saved by a previous run, if any. */
+    static void load(final Path file) {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String key = in.readUTF();
+                KNOWN.putIfAbsent(key, in.readUTF());
+            }
+        } catch (final NoSuchFileException e) {
+            /* first run. */
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read track identities " + file, e);
+        }
+    }
+
+    static String of(final Path path) {
+        try (final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = fc.size();
+            long h = mix(SEED, size);
+            if (size <= 3L * SLICE) {
+                h = hash(h, fc.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            } else {
+                h = hash(h, fc.map(FileChannel.MapMode.READ_ONLY, 0, SLICE));
+                h = hash(h, fc.map(FileChannel.MapMode.READ_ONLY, size / 2 - SLICE / 2, SLICE));
+                h = hash(h, fc.map(FileChannel.MapMode.READ_ONLY, size - SLICE, SLICE));
+            }
+            return toHex(fmix(h));
+        } catch (final IOException e) {
+            /* unreadable: fallback to an identity that is at least stable while the file is not moved. */
+            final byte[] name = path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer bb = ByteBuffer.wrap(name);
+            return toHex(fmix(hash(SEED, bb)));
+        }
+    }
+
+    /* saves the identities of the given tracks, replacing the previous file atomically. */
+    static void save(final Path file, final Collection<Track> tracks) {
+        try {
+            final Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                write(tmp, tracks);
+                try {
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save track identities " + file, e);
+        }
+    }
+
+    private static long fmix(final long k) {
+        long h = k;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(final long seed, final ByteBuffer slice) {
+        final ByteBuffer bb = slice.order(ByteOrder.LITTLE_ENDIAN);
+        long h = seed;
+        while (bb.remaining() >= Long.BYTES) {
+            h = mix(h, bb.getLong());
+        }
+        long tail = 0;
+        int shift = 0;
+        while (bb.hasRemaining()) {
+            tail |= (bb.get() & 0xFFL) << shift;
+            shift += 8;
+        }
+        return mix(h, tail);
+    }
+
+    private static long mix(final long h, final long value) {
+        long k = value * C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        final long r = h ^ k;
+        return Long.rotateLeft(r, 27) * 5 + 0x52dce729;
+    }
+
+    private static String toHex(final long h) {
+        final String hex = Long.toHexString(h);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+    private static void write(final Path tmp, final Collection<Track> tracks) throws IOException {
+        final Map<String, String> ids = new HashMap<>();
+        for (final Track t : tracks) {
+            final String key = t.key();
+            final String id = KNOWN.get(key);
+            if (id != null) {
+                ids.put(key, id);
+            }
+        }
+        try (final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(ids.size());
+            for (final Map.Entry<String, String> e : ids.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2020-2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.peel.tracks;
+
+import java.util.List;
+
+public final class TrackIndex {
+
+    private final List<Album> albums;
+
+    private volatile Facets facets;
+
+    private volatile QueryIndex queryIndex;
+
+    TrackIndex(final List<Album> someAlbums) {
+        albums = someAlbums;
+        facets = null;
+        queryIndex = null;
+    }
+
+    public final Facets facets() {
+        /* built at most once, on first use. */
+        Facets result = facets;
+        if (result == null) {
+            synchronized (this) {
+                result = facets;
+                if (result == null) {
+                    result = Facets.of(albums);
+                    facets = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    final List<Album> albums() {
+        return albums;
+    }
+
+    final QueryIndex queryIndex() {
+        /* built at most once, on first structured query. */
+        QueryIndex result = queryIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = queryIndex;
+                if (result == null) {
+                    result = QueryIndex.of(albums, facets());
+                    queryIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -30,176 +30,485 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.peel.tracks;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.DirectoryStream.Filter;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.CollationKey;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+
+import io.omam.peel.core.PeelThreadFactory;
 
 public final class Tracks {
 
-    private static final Comparator<? super Track> TRACK_COMPARATOR = Comparator.comparing(Track::name);
+    /* a directory entry with its sort keys, computed once before sorting rather than on every comparison. */
+    private static final class RankedEntry implements Comparable<RankedEntry> {
+
+        private final DirectoryEntry entry;
+
+        private final int priority;
+
+        private final CollationKey sortKey;
+
+        RankedEntry(final DirectoryEntry anEntry, final int aPriority) {
+            entry = anEntry;
+            priority = aPriority;
+            sortKey = Names.sortKey(anEntry.name());
+        }
+
+        @Override
+        public final int compareTo(final RankedEntry other) {
+            final int p = Integer.compare(other.priority, priority);
+            return p != 0 ? p : sortKey.compareTo(other.sortKey);
+        }
+
+    }
 
-    private static final Comparator<? super Artist> ARTIST_COMPARATOR = Comparator
-        .<Artist, String> comparing(Artist::firstChar, String.CASE_INSENSITIVE_ORDER)
-        .thenComparing(Artist::name);
+    static final Comparator<? super Album> ALBUM_COMPARATOR =
+            Comparator.comparing(Album::artistSortKey).thenComparing(Album::nameSortKey);
 
-    private static final String IGNORE = "the ";
+    static final Comparator<? super Artist> ARTIST_COMPARATOR =
+            Comparator.comparing(Artist::firstChar).thenComparing(Artist::sortKey);
 
     private static final Logger LOGGER = Logger.getLogger(Tracks.class.getName());
 
+    /* runs the search of each root when several are searched at once. */
+    private static final Executor ROOTS = Executors.newCachedThreadPool(new PeelThreadFactory("library-root"));
+
     private Tracks() {
         // empty.
     }
 
-    public static Runnable searchArtists(final Path artists, final SearchListener<List<Artist>> listener) {
+    /*
+     * the albums of the given index with only the tracks matching the given filter.
+     */
+    public static TrackIndex filter(final TrackIndex index, final FacetFilter filter) {
+        if (filter.isEmpty()) {
+            return index;
+        }
+        final Facets facets = index.facets();
+        return new TrackIndex(facets.albums(facets.select(filter)));
+    }
 
-        final Filter<Path> filter = p -> {
-            final File f = p.toFile();
-            return f.isDirectory() && !f.isHidden();
-        };
+    /*
+     * search predicates are given the folded names, not the names as displayed: queries must be folded too.
+     */
+    public static String fold(final String query) {
+        return Names.fold(query);
+    }
 
-        return () -> {
-            listener.searchStarted();
-            final List<Artist> res = new ArrayList<>();
-            try (final DirectoryStream<Path> artistsStream = Files.newDirectoryStream(artists, filter)) {
-                for (final Path artist : artistsStream) {
-                    if (Thread.currentThread().isInterrupted()) {
-                        return;
-                    }
-                    res.add(artist(artist));
-                }
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, e.getMessage(), e);
+    /*
+     * computes the identity of every track of the given index not identified by a previous run in parallel, blocks
+     * until done or interrupted; then saves the identities of the tracks of the root, if it has a checkpoint
+     * directory.
+     */
+    public static void identify(final TrackIndex index, final LibraryRoot root) {
+        final ScanSettings settings = root.settings();
+        final PeelThreadFactory threads = new PeelThreadFactory("library-hasher", Thread.MIN_PRIORITY);
+        final ExecutorService pool = Executors.newFixedThreadPool(settings.parallelism(), threads);
+        final List<Track> tracks =
+                index.albums().stream().flatMap(a -> a.tracks().stream()).collect(Collectors.toList());
+        try {
+            final List<Callable<Void>> tasks = tracks
+                .stream()
+                .filter(t -> !t.isIdentified())
+                .map(t -> (Callable<Void>) () -> {
+                    t.identify();
+                    return null;
+                })
+                .collect(Collectors.toList());
+            pool.invokeAll(tasks);
+            root.ids().ifPresent(f -> TrackIds.save(f, tracks));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static TrackIndex index(final Path root, final Set<String> supportedFormats,
+            final ScanSettings settings, final LibraryAccess access) {
+        final LibraryWalker walker = new LibraryWalker(supportedFormats, settings, access);
+        return index(walker, root, new ScanPriority(), ScanCheckpoint.none());
+    }
+
+    /*
+     * directories of the artists the user looks at are scanned first: see LibraryRoot#priority; an interrupted
+     * scan resumes from the checkpoint of the root, if any; identities of tracks saved by a previous run are
+     * loaded first.
+     */
+    public static TrackIndex index(final LibraryRoot root, final Set<String> supportedFormats) {
+        root.ids().ifPresent(TrackIds::load);
+        final ScanCheckpoint checkpoint =
+                root.checkpoint().map(f -> ScanCheckpoint.open(f, root.path())).orElse(ScanCheckpoint.none());
+        final LibraryWalker walker =
+                new LibraryWalker(supportedFormats, root.settings(), root.access(), root.statistics());
+        return index(walker, root.path(), root.priority(), checkpoint);
+    }
+
+
+    /*
+     * builds the facets and query indexes of the given index, otherwise built on first use.
+     */
+    public static void prepare(final TrackIndex index) {
+        index.facets();
+        index.queryIndex();
+    }
+
+    /*
+     * one index of the albums of all the given indexes, typically of different roots.
+     */
+    public static TrackIndex merge(final List<TrackIndex> indexes) {
+        final List<Album> albums = new ArrayList<>();
+        indexes.forEach(i -> albums.addAll(i.albums()));
+        /* concatenation of sorted runs: merged in linear time. */
+        albums.sort(ALBUM_COMPARATOR);
+        return new TrackIndex(albums);
+    }
+
+    /*
+     * the given merged index with the albums of the given removed index taken out and those of the given added
+     * index merged in, both sorted: linear in the size of the library, no sort.
+     */
+    static TrackIndex merge(final TrackIndex merged, final TrackIndex removed, final TrackIndex added) {
+        final Set<Album> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(removed.albums());
+        final List<Album> kept = merged.albums();
+        final List<Album> more = added.albums();
+        final List<Album> albums = new ArrayList<>(kept.size() - gone.size() + more.size());
+        int i = 0;
+        int j = 0;
+        while (i < kept.size() || j < more.size()) {
+            if (i < kept.size() && gone.contains(kept.get(i))) {
+                i++;
+            } else if (j == more.size()
+                || i < kept.size() && ALBUM_COMPARATOR.compare(kept.get(i), more.get(j)) <= 0) {
+                albums.add(kept.get(i++));
+            } else {
+                albums.add(more.get(j++));
             }
-            res.sort(ARTIST_COMPARATOR);
-            listener.found(res);
-            listener.searchOver();
-        };
+        }
+        return new TrackIndex(albums);
+    }
+
+    public static Flow.Publisher<Album> publishAll(final Future<TrackIndex> index,
+            final Predicate<String> predicate, final Executor executor) {
+        return publishIndex(index, album -> {
+            if (predicate.test(album.artistKey()) || predicate.test(album.nameKey())) {
+                return album.tracks();
+            }
+            return matchingTracks(album, predicate);
+        }, executor);
+    }
+
+    /*
+     * every artist as soon as it is listed, in directory order: see SortedResults to show them sorted.
+     */
+    public static Flow.Publisher<Artist> publishArtists(final Path artists, final LibraryAccess access,
+            final Executor executor) {
+        return new SearchPublisher<>(sink -> artists(artists, access, sink), executor);
+    }
+
+    /*
+     * the artists of all the given roots as soon as each root is listed, an artist found in several roots being
+     * published once.
+     */
+    public static Flow.Publisher<Artist> publishArtists(final List<LibraryRoot> roots, final Executor executor) {
+        final Set<String> known = ConcurrentHashMap.newKeySet();
+        final List<SearchPublisher.Producer<Artist>> producers = new ArrayList<>();
+        for (final LibraryRoot root : roots) {
+            producers.add(sink -> artists(root.path(), root.access(), a -> known.add(a.name()), sink));
+        }
+        return new SearchPublisher<>(SearchPublisher.parallel(producers, ROOTS), executor);
+    }
+
+    public static Flow.Publisher<Album> publishByAlbum(final Path artists, final Set<String> supportedFormats,
+            final Predicate<String> predicate, final LibraryAccess access, final Executor executor) {
+        return new SearchPublisher<>(byAlbum(artists, supportedFormats, predicate, access, new ScanPriority()),
+                                     executor);
+    }
+
+    public static Flow.Publisher<Album> publishByAlbum(final List<LibraryRoot> roots,
+            final Set<String> supportedFormats, final Predicate<String> predicate, final Executor executor) {
+        return publishRoots(roots, r -> byAlbum(r.path(), supportedFormats, predicate, r.access(), r.priority()),
+                            executor);
+    }
+
+    public static Flow.Publisher<Album> publishByAlbum(final Future<TrackIndex> index,
+            final Predicate<String> predicate, final Executor executor) {
+        return publishIndex(index, album -> predicate.test(album.nameKey()) ? album.tracks() : List.of(),
+                            executor);
+    }
+
+    public static Flow.Publisher<Album> publishByArtist(final Path artists, final Set<String> supportedFormats,
+            final Predicate<String> predicate, final LibraryAccess access, final Executor executor) {
+        return new SearchPublisher<>(byArtist(artists, supportedFormats, predicate, access, new ScanPriority()),
+                                     executor);
+    }
+
+    public static Flow.Publisher<Album> publishByArtist(final List<LibraryRoot> roots,
+            final Set<String> supportedFormats, final Predicate<String> predicate, final Executor executor) {
+        return publishRoots(roots, r -> byArtist(r.path(), supportedFormats, predicate, r.access(), r.priority()),
+                            executor);
+    }
+
+    public static Flow.Publisher<Album> publishByArtist(final Future<TrackIndex> index,
+            final Predicate<String> predicate, final Executor executor) {
+        return publishIndex(index, album -> predicate.test(album.artistKey()) ? album.tracks() : List.of(),
+                            executor);
+    }
+
+    public static Flow.Publisher<Album> publishByTrack(final Future<TrackIndex> index,
+            final Predicate<String> predicate, final Executor executor) {
+        return publishIndex(index, album -> matchingTracks(album, predicate), executor);
+    }
+
+    /*
+     * albums with the tracks matching both the given query and filter.
+     */
+    public static Flow.Publisher<Album> publishQuery(final Future<TrackIndex> index, final Query query,
+            final FacetFilter filter, final Executor executor) {
+        return publishIndex(index, idx -> {
+            final Facets facets = idx.facets();
+            return facets.albums(query.select(idx.queryIndex(), facets.select(filter)));
+        }, Album::tracks, executor);
+    }
+
+    public static Runnable searchAll(final Future<TrackIndex> index, final Predicate<String> predicate,
+            final SearchListener<Album> listener) {
+        return listen(publishAll(index, predicate, Runnable::run), listener);
+    }
+
+    public static Runnable searchArtists(final Path artists, final LibraryAccess access,
+            final SearchListener<Artist> listener) {
+        return listen(publishArtists(artists, access, Runnable::run), listener);
+    }
+
+    public static Runnable searchArtists(final List<LibraryRoot> roots, final SearchListener<Artist> listener) {
+        return listen(publishArtists(roots, Runnable::run), listener);
     }
 
     public static Runnable searchByAlbum(final Path artists, final Set<String> supportedFormats,
-            final Predicate<String> predicate, final SearchListener<Album> listener) {
+            final Predicate<String> predicate, final LibraryAccess access, final SearchListener<Album> listener) {
+        return listen(publishByAlbum(artists, supportedFormats, predicate, access, Runnable::run), listener);
+    }
+
+    public static Runnable searchByArtist(final Path artists, final Set<String> supportedFormats,
+            final Predicate<String> predicate, final LibraryAccess access, final SearchListener<Album> listener) {
+        return listen(publishByArtist(artists, supportedFormats, predicate, access, Runnable::run), listener);
+    }
+
+    public static Runnable searchByTrack(final Future<TrackIndex> index, final Predicate<String> predicate,
+            final SearchListener<Album> listener) {
+        return listen(publishByTrack(index, predicate, Runnable::run), listener);
+    }
 
-        final Filter<Path> filter = p -> predicate.test(fileName(p));
+    public static Suggestions suggestions(final TrackIndex index) {
+        return Suggestions.of(index.albums());
+    }
+
+    private static Album album(final String artistName, final DirectoryEntry album, final LibraryWalker walker) {
+        final String albumName = album.name();
+        /* tracks are only listed when needed: expanded, queued or warmed up in the background. */
+        return new Album(artistName, albumName, () -> walker.albumTracks(artistName, albumName, album.path));
+    }
+
+    private static Artist artist(final String name) {
+        final String folded = Names.fold(Names.withoutArticle(name));
+        final char first = folded.isEmpty() ? '#' : folded.charAt(0);
+        final String firstChar =
+                Character.isLetter(first) ? Character.toString(Character.toUpperCase(first)) : "#";
+        return new Artist(name, firstChar);
+    }
+
+    private static void artists(final Path artists, final LibraryAccess access,
+            final SearchPublisher.Sink<Artist> sink) {
+        artists(artists, access, a -> true, sink);
+    }
 
-        return () -> {
-            listener.searchStarted();
-            try (final DirectoryStream<Path> artistsStream = Files.newDirectoryStream(artists)) {
-                for (final Path artist : artistsStream) {
-                    final String artistName = fileName(artist);
-                    if (Thread.currentThread().isInterrupted()) {
+    private static void artists(final Path artists, final LibraryAccess access, final Predicate<Artist> isNew,
+            final SearchPublisher.Sink<Artist> sink) {
+        for (final DirectoryEntry artist : list(artists, access)) {
+            if (sink.isCancelled()) {
+                return;
+            }
+            if (artist.attributes.isDirectory() && !artist.isHidden()) {
+                final Artist a = artist(artist.name());
+                if (isNew.test(a) && !sink.emit(a)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static SearchPublisher.Producer<Album> byAlbum(final Path artists, final Set<String> supportedFormats,
+            final Predicate<String> predicate, final LibraryAccess access, final ScanPriority priority) {
+        final LibraryWalker walker = new LibraryWalker(supportedFormats, ScanSettings.defaults(), access);
+        return sink -> {
+            final List<DirectoryEntry> entries = list(artists, access, priority);
+            for (int i = 0; i < entries.size(); i++) {
+                final DirectoryEntry artist = entries.get(i);
+                if (sink.isCancelled()) {
+                    return;
+                }
+                sink.progress(i, entries.size());
+                if (!artist.attributes.isDirectory()) {
+                    continue;
+                }
+                for (final DirectoryEntry album : sorted(list(artist.path, access))) {
+                    if (album.attributes.isDirectory() && predicate.test(Names.fold(album.name()))
+                        && !sink.emit(album(artist.name(), album, walker))) {
                         return;
                     }
-                    try (final DirectoryStream<Path> albumsStream = Files.newDirectoryStream(artist, filter)) {
-                        for (final Path album : albumsStream) {
-                            final String albumName = fileName(album);
-                            if (Thread.currentThread().isInterrupted()) {
-                                return;
-                            }
-                            final List<Track> tracks = tracks(artistName, albumName, album, supportedFormats);
-                            listener.found(new Album(artistName, albumName, tracks));
-                        }
-                    } catch (final IOException e) {
-                        LOGGER.log(Level.WARNING, e.getMessage(), e);
-                    }
                 }
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, e.getMessage(), e);
             }
-            listener.searchOver();
         };
     }
 
-    public static Runnable searchByArtist(final Path artists, final Set<String> supportedFormats,
-            final Predicate<String> predicate, final SearchListener<Album> listener) {
-
-        final Filter<Path> filter = p -> predicate.test(fileName(p));
-
-        return () -> {
-            listener.searchStarted();
-            try (final DirectoryStream<Path> artistsStream = Files.newDirectoryStream(artists, filter)) {
-                for (final Path artist : artistsStream) {
-                    final String artistName = fileName(artist);
-                    if (Thread.currentThread().isInterrupted()) {
+    private static SearchPublisher.Producer<Album> byArtist(final Path artists, final Set<String> supportedFormats,
+            final Predicate<String> predicate, final LibraryAccess access, final ScanPriority priority) {
+        final LibraryWalker walker = new LibraryWalker(supportedFormats, ScanSettings.defaults(), access);
+        return sink -> {
+            final List<DirectoryEntry> entries = list(artists, access, priority);
+            for (int i = 0; i < entries.size(); i++) {
+                final DirectoryEntry artist = entries.get(i);
+                if (sink.isCancelled()) {
+                    return;
+                }
+                sink.progress(i, entries.size());
+                if (!artist.attributes.isDirectory() || !predicate.test(Names.fold(artist.name()))) {
+                    continue;
+                }
+                for (final DirectoryEntry album : sorted(list(artist.path, access))) {
+                    if (album.attributes.isDirectory() && !sink.emit(album(artist.name(), album, walker))) {
                         return;
                     }
-                    try (final DirectoryStream<Path> albumsStream = Files.newDirectoryStream(artist)) {
-                        for (final Path album : albumsStream) {
-                            final String albumName = fileName(album);
-                            if (Thread.currentThread().isInterrupted()) {
-                                return;
-                            }
-                            final List<Track> tracks = tracks(artistName, albumName, album, supportedFormats);
-                            if (!tracks.isEmpty()) {
-                                listener.found(new Album(artistName, albumName, tracks));
-                            }
-                        }
-                    } catch (final IOException e) {
-                        LOGGER.log(Level.WARNING, e.getMessage(), e);
-                    }
                 }
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, e.getMessage(), e);
             }
-            listener.searchOver();
         };
     }
 
-    private static Artist artist(final Path artist) {
-        final String name = fileName(artist);
-        final char first;
-        if (name.toLowerCase().startsWith(IGNORE)) {
-            first = name.charAt(IGNORE.length());
-        } else {
-            first = name.charAt(0);
-        }
-        final String firstChar = Character.isLetter(first) ? Character.toString(first) : "#";
-        return new Artist(name, firstChar);
-    }
-
-    private static String fileName(final Path p) {
-        return p.getFileName().toString();
-    }
-
-    private static boolean isFormatSupported(final Path track, final Set<String> supportedFormats) {
-        final String trackFileName = fileName(track);
-        if (!trackFileName.contains(".")) {
-            return false;
+    private static TrackIndex index(final LibraryWalker walker, final Path root, final ScanPriority priority,
+            final ScanCheckpoint checkpoint) {
+        final Queue<Album> albums = new ConcurrentLinkedQueue<>();
+        try {
+            walker.walk(root, priority, checkpoint, albums::add);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        final String ext = trackFileName.substring(trackFileName.lastIndexOf(".") + 1).toUpperCase();
-        return supportedFormats.contains(ext);
+        final List<Album> sorted = new ArrayList<>(albums);
+        sorted.sort(ALBUM_COMPARATOR);
+        return new TrackIndex(sorted);
     }
 
-    private static Stream<Path> listFiles(final Path p) {
+    private static List<DirectoryEntry> list(final Path dir, final LibraryAccess access) {
         try {
-            return Files.list(p);
+            return access.list(dir);
         } catch (final IOException e) {
-            return Stream.empty();
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            return Collections.emptyList();
         }
     }
 
-    private static String trackName(final Path track) {
-        return fileName(track).replaceFirst("[.][^.]+$", "");
+    /*
+     * artists looked at by the user first, otherwise in library order: albums are then mostly found in the order
+     * they are shown.
+     */
+    private static List<DirectoryEntry> list(final Path artists, final LibraryAccess access,
+            final ScanPriority priority) {
+        return sorted(list(artists, access), e -> priority.of(e.path.getFileName()));
+    }
+
+    /*
+     * the search runs on the thread that runs the returned runnable, cancelled by interrupting it.
+     */
+    private static <T> Runnable listen(final Flow.Publisher<T> publisher, final SearchListener<T> listener) {
+        return () -> publisher.subscribe(new SearchListenerSubscriber<>(listener));
     }
 
-    private static List<Track> tracks(final String artistName, final String albumName, final Path album,
-            final Set<String> supportedFormats) {
-        return listFiles(album)
-            .filter(track -> isFormatSupported(track, supportedFormats))
-            .map(track -> new Track(artistName, albumName, trackName(track), track))
-            .sorted(TRACK_COMPARATOR)
+    private static List<Track> matchingTracks(final Album album, final Predicate<String> predicate) {
+        return album
+            .tracks()
+            .stream()
+            .filter(t -> predicate.test(t.nameKey()) || predicate.test(t.titleKey()))
             .collect(Collectors.toList());
     }
 
+    private static Flow.Publisher<Album> publishIndex(final Future<TrackIndex> index,
+            final Function<Album, List<Track>> matcher, final Executor executor) {
+        return publishIndex(index, TrackIndex::albums, matcher, executor);
+    }
+
+    private static Flow.Publisher<Album> publishIndex(final Future<TrackIndex> index,
+            final Function<TrackIndex, List<Album>> selector, final Function<Album, List<Track>> matcher,
+            final Executor executor) {
+        return new SearchPublisher<>(sink -> {
+            try {
+                final List<Album> albums = selector.apply(index.get());
+                for (int i = 0; i < albums.size(); i++) {
+                    final Album album = albums.get(i);
+                    if (sink.isCancelled()) {
+                        return;
+                    }
+                    sink.progress(i, albums.size());
+                    final List<Track> tracks = matcher.apply(album);
+                    if (!tracks.isEmpty() && !sink.emit(album.withTracks(tracks))) {
+                        return;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            }
+        }, executor);
+    }
+
+    /* every root searched in parallel, each on its own thread. */
+    private static Flow.Publisher<Album> publishRoots(final List<LibraryRoot> roots,
+            final Function<LibraryRoot, SearchPublisher.Producer<Album>> producer, final Executor executor) {
+        final List<SearchPublisher.Producer<Album>> producers =
+                roots.stream().map(producer).collect(Collectors.toList());
+        return new SearchPublisher<>(SearchPublisher.parallel(producers, ROOTS), executor);
+    }
+
+    /* entries in library order. */
+    private static List<DirectoryEntry> sorted(final List<DirectoryEntry> entries) {
+        return sorted(entries, e -> ScanPriority.NONE);
+    }
+
+    /* entries of the highest priority first, then in library order. */
+    private static List<DirectoryEntry> sorted(final List<DirectoryEntry> entries,
+            final ToIntFunction<DirectoryEntry> priority) {
+        final List<RankedEntry> ranked = new ArrayList<>(entries.size());
+        for (final DirectoryEntry e : entries) {
+            ranked.add(new RankedEntry(e, priority.applyAsInt(e)));
+        }
+        Collections.sort(ranked);
+        final List<DirectoryEntry> result = new ArrayList<>(ranked.size());
+        for (final RankedEntry r : ranked) {
+            result.add(r.entry);
+        }
+        return result;
+    }
+
 }